@@ -0,0 +1,16 @@
+package com.douglasavila.authservice.entity;
+
+import com.douglasavila.authservice.util.TimeOrderedUuid;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.util.UUID;
+
+/** Generates the time-ordered UUIDv7 ids of the JPA entities. */
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return TimeOrderedUuid.next();
+    }
+}
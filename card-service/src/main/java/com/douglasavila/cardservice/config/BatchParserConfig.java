@@ -1,8 +1,11 @@
 package com.douglasavila.cardservice.config;
 
-import com.douglasavila.cardservice.repository.CardStatusRepository;
+import com.douglasavila.cardservice.service.BinTable;
 import com.douglasavila.cardservice.util.BatchParser;
+import com.douglasavila.cardservice.util.ByteBatchParser;
 import com.douglasavila.cardservice.util.CardHasher;
+import com.douglasavila.cardservice.util.StringBatchParser;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,8 +15,14 @@ public class BatchParserConfig {
     @Bean
     public BatchParser batchParser(
             CardHasher hasher,
-            CardStatusRepository cardStatusRepository
+            BinTable binTable,
+            @Value("${card.ingest.parser:bytes}") String parser,
+            @Value("${card.validation.luhn.enabled:false}") boolean luhn
     ) {
-        return new BatchParser(hasher, cardStatusRepository);
+        return switch (parser) {
+            case "bytes" -> new ByteBatchParser(hasher, luhn, binTable::current);
+            case "string" -> new StringBatchParser(hasher, luhn, binTable::current);
+            default -> throw new IllegalArgumentException("Unknown card.ingest.parser: " + parser);
+        };
     }
 }
@@ -0,0 +1,78 @@
+package com.douglasavila.cardservice.controller;
+
+import com.douglasavila.cardservice.controller.dto.ApiErrorResponse;
+import com.douglasavila.cardservice.controller.dto.GetBatchResponse;
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.BatchStatus;
+import com.douglasavila.cardservice.repository.BatchRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+@RestController
+public class BatchController {
+
+    private final BatchRepository batchRepository;
+
+    public BatchController(BatchRepository batchRepository) {
+        this.batchRepository = batchRepository;
+    }
+
+    /**
+     * Progress of a batch file: its status, processed versus expected records and the records
+     * processed per second since the current attempt started.
+     */
+    @GetMapping("/batches/{batchId}")
+    public ResponseEntity<?> getBatch(@PathVariable UUID batchId) {
+        Optional<Batch> batch = batchRepository.findByBatchId(batchId);
+
+        if (batch.isEmpty()) {
+            var body = new ApiErrorResponse(
+                    404,
+                    "Not Found",
+                    "Batch with the provided id does not exist."
+            );
+
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
+        }
+
+        Batch found = batch.get();
+
+        return ResponseEntity.ok().body(new GetBatchResponse(
+                found.getBatchId().toString(),
+                found.getFileName(),
+                found.getBatchCode(),
+                found.getBatchStatus().getBatchStatusName(),
+                found.getExpectedRecords(),
+                found.getProcessedRecords(),
+                found.getDuplicateRecords(),
+                found.getStartedDate(),
+                found.getProcessingDate(),
+                recordsPerSecond(found)));
+    }
+
+    // Null when the end of the attempt is unknown: a FAILED batch keeps the date of an earlier run, if any
+    private static Double recordsPerSecond(Batch batch) {
+        Instant started = batch.getStartedDate();
+        if (started == null || batch.getProcessedRecords() == null) return null;
+
+        Instant ended;
+        if (BatchStatus.Values.RECEIVED.name().equals(batch.getBatchStatus().getBatchStatusName())) {
+            ended = Instant.now();
+        } else if (batch.getProcessingDate() != null && !batch.getProcessingDate().isBefore(started)) {
+            ended = batch.getProcessingDate();
+        } else {
+            return null;
+        }
+
+        long elapsedMillis = Math.max(1, Duration.between(started, ended).toMillis());
+        return batch.getProcessedRecords() * 1000.0 / elapsedMillis;
+    }
+}
@@ -4,58 +4,113 @@ import com.douglasavila.cardservice.controller.dto.*;
 import com.douglasavila.cardservice.entity.Card;
 import com.douglasavila.cardservice.entity.CardStatus;
 import com.douglasavila.cardservice.repository.CardRepository;
-import com.douglasavila.cardservice.repository.CardStatusRepository;
+import com.douglasavila.cardservice.service.BatchIngestJobs;
+import com.douglasavila.cardservice.service.BinTable;
 import com.douglasavila.cardservice.service.CardBatchIngestService;
+import com.douglasavila.cardservice.service.CardBulkCreateService;
+import com.douglasavila.cardservice.service.CardBulkLookupService;
+import com.douglasavila.cardservice.service.CardGroupCommitter;
+import com.douglasavila.cardservice.service.CardLookupService;
+import com.douglasavila.cardservice.service.StatusRegistry;
 import com.douglasavila.cardservice.util.CardHasher;
 import com.douglasavila.cardservice.util.CardNumberValidator;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import tools.jackson.core.JacksonException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class CardController {
 
     private final CardRepository cardRepository;
-    private final CardStatusRepository cardStatusRepository;
+    private final StatusRegistry statusRegistry;
     private final CardHasher hasher;
     private final CardBatchIngestService ingestService;
+    private final CardLookupService cardLookupService;
+    private final CardBulkLookupService bulkLookupService;
+    private final CardBulkCreateService bulkCreateService;
+    private final CardGroupCommitter groupCommitter;
+    private final BatchIngestJobs ingestJobs;
+    private final BinTable binTable;
+    private final boolean luhn;
 
-    public CardController(CardRepository cardRepository, CardStatusRepository cardStatusRepository, CardHasher hasher, CardBatchIngestService ingestService) {
+    public CardController(CardRepository cardRepository, StatusRegistry statusRegistry, CardHasher hasher, CardBatchIngestService ingestService, CardLookupService cardLookupService, CardBulkLookupService bulkLookupService, CardBulkCreateService bulkCreateService, CardGroupCommitter groupCommitter, BatchIngestJobs ingestJobs, BinTable binTable, @Value("${card.validation.luhn.enabled:false}") boolean luhn) {
         this.cardRepository = cardRepository;
-        this.cardStatusRepository = cardStatusRepository;
+        this.statusRegistry = statusRegistry;
         this.hasher = hasher;
         this.ingestService = ingestService;
+        this.cardLookupService = cardLookupService;
+        this.bulkLookupService = bulkLookupService;
+        this.bulkCreateService = bulkCreateService;
+        this.groupCommitter = groupCommitter;
+        this.ingestJobs = ingestJobs;
+        this.binTable = binTable;
+        this.luhn = luhn;
     }
 
     @PostMapping("/card")
-    public ResponseEntity<?> createCard(@RequestBody CreateCardRequest dto) {
+    public ResponseEntity<?> createCard(@RequestBody CreateCardRequest dto) throws InterruptedException {
 
         var cardNumber = dto.cardNumber();
 
-        if (!CardNumberValidator.isValidPan(cardNumber)) {
+        if (!CardNumberValidator.isValidPan(cardNumber, luhn)) {
             return badRequestResponse("Card number is invalid");
         }
 
         String cardHash = hasher.hash(cardNumber);
-        cardRepository.findByCardHash(cardHash)
-                .orElseGet(() -> {
-                    Card newCard = new Card(
-                            cardHash,
-                            hasher.last4(cardNumber),
-                            cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.toString()));
-                    return cardRepository.save(newCard);
-                });
+
+        if (groupCommitter.isEnabled()) {
+            // Stored with the other creations of the next few milliseconds, an existing card is skipped
+            groupCommitter.create(newCard(cardHash, cardNumber));
+
+            return ResponseEntity.ok("Card created with success or already exists.");
+        }
+
+        // A hash the filter has never seen is certainly new, so the lookup is skipped
+        Optional<Card> existingCard = cardLookupService.mightExist(cardHash)
+                ? cardRepository.findByCardHash(cardHash)
+                : Optional.empty();
+
+        if (existingCard.isEmpty()) {
+            try {
+                cardRepository.save(newCard(cardHash, cardNumber));
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent request for the same card inserted it first
+                if (cardRepository.findByCardHash(cardHash).isEmpty()) throw e;
+            }
+            cardLookupService.invalidate(cardHash);
+        }
 
         return ResponseEntity.ok("Card created with success or already exists.");
     }
 
+    // Classified by the BIN table in memory, no query involved
+    private Card newCard(String cardHash, String cardNumber) {
+        Card card = new Card(
+                cardHash,
+                hasher.last4(cardNumber),
+                statusRegistry.cardStatus(CardStatus.Values.VALID));
+        binTable.current().classify(card, cardNumber);
+        return card;
+    }
+
     @PostMapping(
             value = "/cards",
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE
@@ -67,24 +122,58 @@ public class CardController {
         }
 
         try (InputStream in = file.getInputStream()) {
-            ingestService.ingest(in, StandardCharsets.UTF_8);
+            return ingestCardsBatch(in, StandardCharsets.UTF_8);
         }
+    }
 
-        return ResponseEntity.ok("Batch file processed with success.");
+    /**
+     * Same as the multipart upload, with the batch file as the raw request body. Nothing is
+     * buffered first: lines are parsed and committed while the upload is still arriving.
+     */
+    @PostMapping(
+            value = "/cards",
+            consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE}
+    )
+    public ResponseEntity<?> createCardsBatchStream(
+            InputStream body,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType) throws IOException {
+
+        PushbackInputStream in = new PushbackInputStream(body);
+        int firstByte = in.read();
+
+        if (firstByte == -1) {
+            return badRequestResponse("Cards file is null or empty");
+        }
+        in.unread(firstByte);
+
+        Charset charset = contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+        return ingestCardsBatch(in, charset);
+    }
+
+    /**
+     * Creates the cards of a JSON array or NDJSON stream of card numbers, answering one NDJSON
+     * line per card number (CREATED, EXISTS or INVALID) in the same order.
+     */
+    @PostMapping(
+            value = "/cards",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE}
+    )
+    public ResponseEntity<?> createCards(InputStream body, HttpServletResponse response) throws IOException {
+        return streamCardNumberResults(response, out -> bulkCreateService.create(body, out));
     }
 
     @GetMapping("/card")
     public ResponseEntity<?> getCard(@RequestBody GetCardRequest dto) {
         var cardNumber = dto.cardNumber();
 
-        if (!CardNumberValidator.isValidPan(cardNumber)) {
+        if (!CardNumberValidator.isValidPan(cardNumber, luhn)) {
             return badRequestResponse("Card number is invalid.");
         }
 
         String cardHash = hasher.hash(cardNumber);
-        Optional<Card> card = cardRepository.findByCardHash(cardHash);
+        Optional<UUID> cardId = cardLookupService.findCardId(cardHash);
 
-        if (card.isEmpty()) {
+        if (cardId.isEmpty()) {
             var body = new ApiErrorResponse(
                      404,
                     "Not Found",
@@ -94,7 +183,74 @@ public class CardController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(body);
         }
 
-        return ResponseEntity.ok().body(new GetCardResponse(card.get().getId().toString()));
+        return ResponseEntity.ok().body(new GetCardResponse(cardId.get().toString()));
+    }
+
+    /**
+     * Resolves a JSON array or NDJSON stream of card numbers, answering one NDJSON line per
+     * card number (FOUND with the card id, NOT_FOUND or INVALID) in the same order.
+     */
+    @PostMapping(
+            value = "/cards/lookup",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE}
+    )
+    public ResponseEntity<?> lookupCards(InputStream body, HttpServletResponse response) throws IOException {
+        return streamCardNumberResults(response, out -> bulkLookupService.lookup(body, out));
+    }
+
+    private ResponseEntity<?> ingestCardsBatch(InputStream in, Charset charset) throws IOException {
+        if (ingestJobs.isEnabled()) {
+            return submitCardsBatch(in, charset);
+        }
+
+        ingestService.ingest(in, charset);
+
+        return ResponseEntity.ok("Batch file processed with success.");
+    }
+
+    // The cards are ingested in the background; GET /batches/{batchId} shows the progress
+    private ResponseEntity<?> submitCardsBatch(InputStream in, Charset charset) throws IOException {
+        Optional<UUID> batchId;
+
+        try {
+            batchId = ingestJobs.submit(in, charset);
+        } catch (RejectedExecutionException e) {
+            var body = new ApiErrorResponse(
+                    503,
+                    "Service Unavailable",
+                    "Too many batch files are being processed, try again later."
+            );
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(body);
+        }
+
+        if (batchId.isEmpty()) {
+            return ResponseEntity.ok("Batch file processed with success.");
+        }
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/batches/" + batchId.get()))
+                .body(new SubmitBatchResponse(batchId.get().toString()));
+    }
+
+    private interface CardNumberResults {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    // Results are streamed while the request is still being read, so a malformed body only gets a 400 when nothing was written yet
+    private static ResponseEntity<?> streamCardNumberResults(HttpServletResponse response, CardNumberResults results) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+
+        try {
+            results.writeTo(response.getOutputStream());
+        } catch (JacksonException e) {
+            if (response.isCommitted()) throw e;
+
+            response.reset();
+            return badRequestResponse("Card numbers must be a JSON array or NDJSON stream of strings.");
+        }
+
+        return null;
     }
 
     private static ResponseEntity<ApiErrorResponse> badRequestResponse(String message) {
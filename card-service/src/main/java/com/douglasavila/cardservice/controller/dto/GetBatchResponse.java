@@ -0,0 +1,16 @@
+package com.douglasavila.cardservice.controller.dto;
+
+import java.time.Instant;
+
+public record GetBatchResponse(
+        String batchId,
+        String fileName,
+        String batchCode,
+        String status,
+        Integer expectedRecords,
+        Integer processedRecords,
+        Integer duplicateRecords,
+        Instant startedDate,
+        Instant processingDate,
+        Double recordsPerSecond) {
+}
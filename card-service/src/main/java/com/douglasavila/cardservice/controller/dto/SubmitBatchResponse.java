@@ -0,0 +1,4 @@
+package com.douglasavila.cardservice.controller.dto;
+
+public record SubmitBatchResponse(String batchId) {
+}
@@ -2,6 +2,9 @@ package com.douglasavila.cardservice.entity;
 
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
 import java.time.LocalDate;
@@ -20,8 +23,9 @@ import java.util.UUID;
 public class Batch {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    @Column(name="batch_id")
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "batch_id", columnDefinition = "binary(16)")
     private UUID batchId;
 
     @Column(nullable = false)
@@ -33,12 +37,21 @@ public class Batch {
     private Integer expectedRecords;
     private Integer processedRecords;
 
-    @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    // Records of processedRecords that repeated a card read earlier from the same file
+    private Integer duplicateRecords;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "batch_status_id")
     private BatchStatus batchStatus;
 
+    // When the current processing attempt started; processingDate is when it finished
+    private Instant startedDate;
     private Instant processingDate;
 
+    // Resume point of an interrupted ingestion: last committed card and the file offset after it
+    private String lastSequenceNumber;
+    private Long checkpointOffset;
+
     public Batch(String fileName, LocalDate fileDate, String batchCode, Integer expectedRecords) {
         this.fileName = fileName;
         this.fileDate = fileDate;
@@ -101,6 +114,14 @@ public class Batch {
         this.processedRecords = processedRecords;
     }
 
+    public Integer getDuplicateRecords() {
+        return duplicateRecords;
+    }
+
+    public void setDuplicateRecords(Integer duplicateRecords) {
+        this.duplicateRecords = duplicateRecords;
+    }
+
     public BatchStatus getBatchStatus() {
         return batchStatus;
     }
@@ -109,6 +130,14 @@ public class Batch {
         this.batchStatus = batchStatus;
     }
 
+    public Instant getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(Instant startedDate) {
+        this.startedDate = startedDate;
+    }
+
     public Instant getProcessingDate() {
         return processingDate;
     }
@@ -116,4 +145,20 @@ public class Batch {
     public void setProcessingDate(Instant processingDate) {
         this.processingDate = processingDate;
     }
+
+    public String getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    public void setLastSequenceNumber(String lastSequenceNumber) {
+        this.lastSequenceNumber = lastSequenceNumber;
+    }
+
+    public Long getCheckpointOffset() {
+        return checkpointOffset;
+    }
+
+    public void setCheckpointOffset(Long checkpointOffset) {
+        this.checkpointOffset = checkpointOffset;
+    }
 }
@@ -2,6 +2,9 @@ package com.douglasavila.cardservice.entity;
 
 import jakarta.persistence.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.annotations.UuidGenerator;
+import org.hibernate.type.SqlTypes;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -16,8 +19,9 @@ import java.util.UUID;
 public class Card {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    @Column(name = "card_id")
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
+    @JdbcTypeCode(SqlTypes.BINARY)
+    @Column(name = "card_id", columnDefinition = "binary(16)")
     private UUID id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -26,19 +30,28 @@ public class Card {
 
     private String batchSequenceNumber;
 
-    @Column(nullable = false, unique = true)
+    @Convert(converter = CardHashConverter.class)
+    @Column(nullable = false, unique = true, columnDefinition = "binary(32)")
     private String cardHash;
 
     @Column(nullable = false)
     private String cardLast4;
 
-    @ManyToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    // From the BIN table at creation; null when no range held the card number
+    private String cardBrand;
+    private String cardIssuer;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "card_status_id")
     private CardStatus cardStatus;
 
     @CreationTimestamp
     private Instant createdDate;
 
+    // Raw bytes of cardHash when the parser had them, so ingestion need not parse the hex again
+    @Transient
+    private byte[] cardHashDigest;
+
     public Card(String cardHash, String cardLast4, CardStatus cardstatus) {
         this.cardHash = cardHash;
         this.cardLast4 = cardLast4;
@@ -82,6 +95,14 @@ public class Card {
         this.cardHash = cardHash;
     }
 
+    public byte[] getCardHashDigest() {
+        return cardHashDigest;
+    }
+
+    public void setCardHashDigest(byte[] cardHashDigest) {
+        this.cardHashDigest = cardHashDigest;
+    }
+
     public String getCardLast4() {
         return cardLast4;
     }
@@ -90,6 +111,22 @@ public class Card {
         this.cardLast4 = cardLast4;
     }
 
+    public String getCardBrand() {
+        return cardBrand;
+    }
+
+    public void setCardBrand(String cardBrand) {
+        this.cardBrand = cardBrand;
+    }
+
+    public String getCardIssuer() {
+        return cardIssuer;
+    }
+
+    public void setCardIssuer(String cardIssuer) {
+        this.cardIssuer = cardIssuer;
+    }
+
     public CardStatus getCardStatus() {
         return cardStatus;
     }
@@ -0,0 +1,27 @@
+package com.douglasavila.cardservice.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.HexFormat;
+
+/**
+ * Stores the 64-character hex card hash as its raw 32 bytes. Half the width in the
+ * cards table and, more importantly, in the unique index every lookup probes, while the
+ * entity and the lookup APIs keep working with the hex String CardHasher produces.
+ */
+@Converter
+public class CardHashConverter implements AttributeConverter<String, byte[]> {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    @Override
+    public byte[] convertToDatabaseColumn(String cardHash) {
+        return cardHash != null ? HEX.parseHex(cardHash) : null;
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] cardHash) {
+        return cardHash != null ? HEX.formatHex(cardHash) : null;
+    }
+}
@@ -0,0 +1,16 @@
+package com.douglasavila.cardservice.entity;
+
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.util.UUID;
+
+/** Hands the JPA entities the same UUIDv7 ids the JDBC bulk writer generates. */
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return TimeOrderedUuid.next();
+    }
+}
@@ -1,13 +1,48 @@
 package com.douglasavila.cardservice.repository;
 
 import com.douglasavila.cardservice.entity.Batch;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface BatchRepository extends JpaRepository<Batch, UUID> {
+    @EntityGraph(attributePaths = "batchStatus")
     Optional<Batch> findByBatchCodeAndFileName(String batchCode,  String fileName);
+
+    @EntityGraph(attributePaths = "batchStatus")
+    Optional<Batch> findByBatchId(UUID batchId);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update Batch b
+            set b.processedRecords = :processedRecords,
+                b.duplicateRecords = :duplicateRecords,
+                b.lastSequenceNumber = :lastSequenceNumber,
+                b.checkpointOffset = :checkpointOffset
+            where b.batchId = :batchId
+            """)
+    int updateProgress(@Param("batchId") UUID batchId,
+                       @Param("processedRecords") int processedRecords,
+                       @Param("duplicateRecords") int duplicateRecords,
+                       @Param("lastSequenceNumber") String lastSequenceNumber,
+                       @Param("checkpointOffset") long checkpointOffset);
+
+    @Transactional
+    @Modifying
+    @Query("""
+            update Batch b
+            set b.processedRecords = b.processedRecords + :count,
+                b.duplicateRecords = b.duplicateRecords + :duplicates
+            where b.batchId = :batchId
+            """)
+    int addProcessedRecords(@Param("batchId") UUID batchId, @Param("count") int count, @Param("duplicates") int duplicates);
 }
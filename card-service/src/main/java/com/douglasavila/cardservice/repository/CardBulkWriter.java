@@ -0,0 +1,92 @@
+package com.douglasavila.cardservice.repository;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.entity.CardHashConverter;
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+/**
+ * Writes cards straight through JDBC as one batched INSERT per chunk, bypassing the
+ * JPA entity lifecycle. Used by the batch ingestion path where millions of rows are
+ * written and none of them needs to be managed afterwards.
+ * <p>
+ * Rows use INSERT ... ON DUPLICATE KEY UPDATE with a no-op update, so the unique index on
+ * card_hash decides which cards are new: a card that already exists (or repeats inside the
+ * chunk) is silently skipped instead of being looked up first. This also keeps concurrent
+ * uploads of the same card safe. Unlike INSERT IGNORE, any other error (a missing batch or
+ * status, a value too long, a NULL in a NOT NULL column) still fails the write.
+ */
+@Repository
+public class CardBulkWriter {
+
+    private static final String INSERT_CARD_SQL = """
+            INSERT INTO cards (card_id, batch_id, batch_sequence_number, card_hash, card_last4, card_brand, card_issuer, card_status_id, created_date)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            ON DUPLICATE KEY UPDATE card_hash = card_hash
+            """;
+
+    private static final CardHashConverter CARD_HASH = new CardHashConverter();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CardBulkWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts all cards in a single JDBC batch. Ids are generated here, time-ordered like the
+     * ones Hibernate assigns, and set back on each card; for cards skipped as duplicates that
+     * id is never stored. The caller must already hold the transaction the rows belong to.
+     */
+    public void write(List<Card> cards) {
+        if (cards.isEmpty()) return;
+
+        // Same binding Hibernate uses for Instant columns, so both paths store identical values
+        Timestamp createdDate = Timestamp.from(Instant.now());
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+
+        jdbcTemplate.batchUpdate(INSERT_CARD_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Card card = cards.get(i);
+                UUID cardId = TimeOrderedUuid.next();
+                card.setId(cardId);
+
+                ps.setBytes(1, toBytes(cardId));
+                ps.setBytes(2, card.getBatch() != null ? toBytes(card.getBatch().getBatchId()) : null);
+                ps.setString(3, card.getBatchSequenceNumber());
+                ps.setBytes(4, CARD_HASH.convertToDatabaseColumn(card.getCardHash()));
+                ps.setString(5, card.getCardLast4());
+                ps.setString(6, card.getCardBrand());
+                ps.setString(7, card.getCardIssuer());
+                ps.setLong(8, card.getCardStatus().getCardStatusId());
+                ps.setTimestamp(9, createdDate, utc);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return cards.size();
+            }
+        });
+    }
+
+    /** UUIDs are stored as 16 big-endian bytes, the layout Hibernate uses for binary(16). */
+    private static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+}
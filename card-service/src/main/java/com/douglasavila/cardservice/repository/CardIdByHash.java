@@ -0,0 +1,6 @@
+package com.douglasavila.cardservice.repository;
+
+import java.util.UUID;
+
+public record CardIdByHash(String cardHash, UUID cardId) {
+}
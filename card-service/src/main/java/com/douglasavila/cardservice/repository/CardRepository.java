@@ -1,13 +1,49 @@
 package com.douglasavila.cardservice.repository;
 
 import com.douglasavila.cardservice.entity.Card;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface CardRepository extends JpaRepository<Card, UUID> {
     Optional<Card> findByCardHash(String cardHash);
+
+    @Query("""
+            select new com.douglasavila.cardservice.repository.CardIdByHash(c.cardHash, c.id)
+            from Card c
+            where c.cardHash in :cardHashes
+            """)
+    List<CardIdByHash> findCardIdsByCardHashIn(@Param("cardHashes") Collection<String> cardHashes);
+
+    // Keyset pages over the time-ordered ids, so reading every card hash stays cheap however far in
+    @Query("""
+            select new com.douglasavila.cardservice.repository.CardIdByHash(c.cardHash, c.id)
+            from Card c
+            order by c.id
+            """)
+    List<CardIdByHash> findCardHashPage(Limit limit);
+
+    @Query("""
+            select new com.douglasavila.cardservice.repository.CardIdByHash(c.cardHash, c.id)
+            from Card c
+            where c.id > :after
+            order by c.id
+            """)
+    List<CardIdByHash> findCardHashPageAfter(@Param("after") UUID after, Limit limit);
+
+    @Query("""
+            select new com.douglasavila.cardservice.repository.CardIdByHash(c.cardHash, c.id)
+            from Card c
+            where c.id > :after and c.id < :before
+            order by c.id
+            """)
+    List<CardIdByHash> findCardHashPageBetween(@Param("after") UUID after, @Param("before") UUID before, Limit limit);
 }
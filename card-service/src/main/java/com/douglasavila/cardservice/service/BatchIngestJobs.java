@@ -0,0 +1,300 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Asynchronous batch ingestion, enabled by {@code card.ingest.async.enabled}. {@link #submit}
+ * writes the upload to the spool journal under {@code card.ingest.spool-dir}, reads its header
+ * and creates the batch row RECEIVED, and returns; the cards are then ingested with
+ * {@link CardBatchIngestService#ingestStartedFile} on one of {@code card.ingest.async.threads}
+ * worker threads and the batch's progress is visible on its row.
+ * <p>
+ * A journal entry is written as a {@code .part} file, fsynced and atomically renamed to
+ * {@code <entry id>.<charset>.batch} before anything is acknowledged, so an acknowledged upload
+ * survives a crash. The entry is recycled once its batch is PROCESSED or PARTIALLY_PROCESSED,
+ * and moved to {@code failed/} under the spool directory when its batch ends FAILED or its
+ * header cannot be read, so a bad file is not retried on every start. On start every entry
+ * still in the journal is ingested again, taking over batches the crash or a shutdown left
+ * RECEIVED. The spool directory must therefore be local to one instance, and on storage
+ * that outlives a reboot; it has no default, and the service does not start with async
+ * ingestion enabled and no spool directory set.
+ * <p>
+ * At most {@code threads + queue-capacity} uploads are accepted at a time. Beyond that
+ * {@link #submit} is rejected before anything is spooled, so a burst of uploads cannot fill
+ * the disk or queue unbounded work. Entries recovered on start are not counted.
+ */
+@Service
+public class BatchIngestJobs implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchIngestJobs.class);
+
+    private static final String ENTRY_SUFFIX = ".batch";
+    private static final String PART_SUFFIX = ".part";
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final CardBatchIngestService ingestService;
+    private final boolean enabled;
+    private final int threads;
+    private final Path spoolDir;
+    private final Path failedDir;
+    private final Semaphore slots;
+
+    private volatile ExecutorService executor;
+
+    public BatchIngestJobs(
+            CardBatchIngestService ingestService,
+            @Value("${card.ingest.async.enabled:false}") boolean enabled,
+            @Value("${card.ingest.async.threads:2}") int threads,
+            @Value("${card.ingest.async.queue-capacity:8}") int queueCapacity,
+            @Value("${card.ingest.spool-dir:}") String spoolDir) {
+        this.ingestService = ingestService;
+        this.enabled = enabled;
+        this.threads = threads;
+        this.spoolDir = spoolDir.isBlank() ? null : Path.of(spoolDir);
+        this.failedDir = this.spoolDir == null ? null : this.spoolDir.resolve("failed");
+        this.slots = new Semaphore(threads + queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Journals the batch file and queues its ingestion. Returns the id of the started batch, or
+     * empty when the batch was already processed.
+     *
+     * @throws RejectedExecutionException when too many batches are already queued
+     */
+    public Optional<UUID> submit(InputStream in, Charset charset) throws IOException {
+        ExecutorService jobExecutor = executor;
+        if (jobExecutor == null) {
+            throw new IllegalStateException("Batch ingestion jobs are not running");
+        }
+        if (!slots.tryAcquire()) {
+            throw new RejectedExecutionException("Batch ingestion queue is full");
+        }
+
+        UUID entryId = TimeOrderedUuid.next();
+        Path part = spoolDir.resolve(entryId + PART_SUFFIX);
+        Path entry = spoolDir.resolve(entryId + "." + charset.name() + ENTRY_SUFFIX);
+        boolean started = false;
+        boolean queued = false;
+
+        try {
+            writeDurably(in, part);
+            Files.move(part, entry, StandardCopyOption.ATOMIC_MOVE);
+            syncSpoolDir();
+
+            Optional<Batch> startedBatch = ingestService.startFile(entry, charset);
+            if (startedBatch.isEmpty()) return Optional.empty();
+
+            // From here on the journal entry is the only copy a restart can resume the batch from
+            started = true;
+            Batch batch = startedBatch.get();
+            jobExecutor.execute(new SubmittedJob(entry, charset, batch));
+            queued = true;
+
+            return Optional.of(batch.getBatchId());
+        } finally {
+            if (!queued) {
+                slots.release();
+                Files.deleteIfExists(part);
+                if (!started) Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    /** Starts the workers and queues every entry left in the journal by a previous run. */
+    @Override
+    public void start() {
+        if (!enabled || executor != null) return;
+        if (spoolDir == null) {
+            // A temporary directory may not survive the reboot the journal is meant to outlive
+            throw new IllegalStateException("card.ingest.spool-dir must point to persistent storage when card.ingest.async.enabled is set");
+        }
+
+        executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("batch-ingest-", 0).factory());
+
+        try {
+            recoverJournal();
+        } catch (IOException e) {
+            log.error("Could not read batch spool journal {}", spoolDir, e);
+        }
+    }
+
+    /**
+     * Stops taking new batches and interrupts the running ones, waiting a bounded time for them.
+     * Queued and interrupted batches stay in the journal and are ingested on the next start.
+     */
+    @Override
+    public void stop() {
+        ExecutorService jobExecutor = executor;
+        if (jobExecutor == null) return;
+
+        executor = null;
+        List<Runnable> dropped = jobExecutor.shutdownNow();
+        slots.release((int) dropped.stream().filter(SubmittedJob.class::isInstance).count());
+
+        try {
+            if (!jobExecutor.awaitTermination(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Batch ingestion jobs still running after {}, leaving them to the journal", STOP_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return executor != null;
+    }
+
+    private void recoverJournal() throws IOException {
+        Files.createDirectories(failedDir);
+
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            entries = files.sorted().toList();
+        }
+
+        for (Path file : entries) {
+            String name = file.getFileName().toString();
+
+            if (name.endsWith(PART_SUFFIX)) {
+                // Never acknowledged, so the client is still waiting to send it again
+                Files.deleteIfExists(file);
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                // Entry ids are time-ordered, so batches resume in the order they were accepted
+                executor.execute(() -> recover(file));
+            }
+        }
+    }
+
+    private void recover(Path entry) {
+        String name = entry.getFileName().toString();
+        Charset charset = Charset.forName(
+                name.substring(name.indexOf('.') + 1, name.length() - ENTRY_SUFFIX.length()));
+
+        try {
+            Optional<Batch> restartedBatch = ingestService.restartFile(entry, charset);
+            if (restartedBatch.isEmpty()) {
+                recycle(entry);
+                return;
+            }
+
+            log.info("Resuming batch {} from spool entry {}", restartedBatch.get().getBatchId(), name);
+            ingest(entry, charset, restartedBatch.get());
+        } catch (IOException | RuntimeException e) {
+            if (stopping()) {
+                log.warn("Spool entry {} was not restarted before shutdown, kept for the next start", name, e);
+                return;
+            }
+            log.error("Spool entry {} could not be restarted, moving it to {}", name, failedDir, e);
+            moveToFailed(entry);
+        }
+    }
+
+    private void ingest(Path entry, Charset charset, Batch batch) {
+        try {
+            ingestService.ingestStartedFile(entry, charset, batch);
+        } catch (IOException | RuntimeException e) {
+            if (stopping()) {
+                // Cut short by stop(); the next start resumes the batch from the journal
+                log.warn("Batch {} ingestion stopped by shutdown, kept in the journal", batch.getBatchId(), e);
+                return;
+            }
+            log.error("Batch {} ingestion failed, moving its spool entry to {}", batch.getBatchId(), failedDir, e);
+            moveToFailed(entry);
+            return;
+        }
+
+        recycle(entry);
+    }
+
+    private boolean stopping() {
+        return executor == null;
+    }
+
+    private void moveToFailed(Path entry) {
+        try {
+            Files.move(entry, failedDir.resolve(entry.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Could not move spool entry {} to {}", entry, failedDir, e);
+        }
+    }
+
+    private static void recycle(Path entry) {
+        try {
+            Files.deleteIfExists(entry);
+        } catch (IOException e) {
+            log.warn("Could not delete spool entry {}", entry, e);
+        }
+    }
+
+    // A queued upload holds one of the slots until it has run, or until stop() drops it
+    private final class SubmittedJob implements Runnable {
+
+        private final Path entry;
+        private final Charset charset;
+        private final Batch batch;
+
+        SubmittedJob(Path entry, Charset charset, Batch batch) {
+            this.entry = entry;
+            this.charset = charset;
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ingest(entry, charset, batch);
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    private void writeDurably(InputStream in, Path part) throws IOException {
+        Files.createDirectories(spoolDir);
+
+        try (FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            in.transferTo(Channels.newOutputStream(out));
+            out.force(true);
+        }
+    }
+
+    // Makes the rename itself durable; not every platform can open a directory for this
+    private void syncSpoolDir() {
+        try (FileChannel dir = FileChannel.open(spoolDir, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            log.debug("Could not sync spool directory {}", spoolDir, e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.util.BinRangeIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The BIN table cards are classified with, loaded from the local file at
+ * {@code card.bin.table.path} into a {@link BinRangeIndex}; without a path every card is left
+ * unclassified.
+ * <p>
+ * The file is checked every {@code card.bin.table.reload-interval} and loaded again when its
+ * modification time or size changed. The new index is built on the reload thread and swapped
+ * in with a single write, so lookups never wait for it and each one sees either the old table
+ * or the new one. A file that fails to load on start stops the service; one that fails later
+ * is logged and the previous table stays in use. Replace the file with an atomic rename so a
+ * half-written one is never read.
+ * <p>
+ * Started in an earlier phase than the default one of {@link DropFolderIngestion} and
+ * {@link BatchIngestJobs}, so the batches they resume on start are classified with the table.
+ * <p>
+ * The ranges in use are published as {@code card.bin.table.ranges}.
+ */
+@Service
+public class BinTable implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(BinTable.class);
+
+    static final int PHASE = DEFAULT_PHASE - 1;
+
+    private final Path path;
+    private final Duration reloadInterval;
+
+    private volatile BinRangeIndex index = BinRangeIndex.EMPTY;
+    private volatile boolean running;
+    private Object loadedVersion;
+    private Thread reloader;
+
+    public BinTable(
+            MeterRegistry meterRegistry,
+            @Value("${card.bin.table.path:}") String path,
+            @Value("${card.bin.table.reload-interval:30s}") Duration reloadInterval) {
+        this.path = path.isBlank() ? null : Path.of(path);
+        this.reloadInterval = reloadInterval;
+
+        Gauge.builder("card.bin.table.ranges", this, table -> table.current().size()).register(meterRegistry);
+    }
+
+    /** The table loaded last; empty until the first load or when no path is configured. */
+    public BinRangeIndex current() {
+        return index;
+    }
+
+    @Override
+    public void start() {
+        if (path == null || running) return;
+
+        try {
+            reload();
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalStateException("Could not load BIN table " + path, e);
+        }
+
+        running = true;
+        reloader = Thread.ofPlatform().name("bin-table-reload").daemon().start(this::watch);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        running = false;
+        reloader.interrupt();
+        try {
+            reloader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void watch() {
+        while (running) {
+            try {
+                Thread.sleep(reloadInterval);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                reload();
+            } catch (IOException | RuntimeException e) {
+                log.error("Could not reload BIN table {}, keeping the {} ranges loaded before", path, index.size(), e);
+            }
+        }
+    }
+
+    // Loads the file again only when it changed since the last load
+    void reload() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Object version = attributes.lastModifiedTime() + "/" + attributes.size();
+        if (Objects.equals(version, loadedVersion)) return;
+
+        BinRangeIndex loaded = BinRangeIndex.load(path);
+        index = loaded;
+        loadedVersion = version;
+        log.info("BIN table {} loaded: {} ranges", path, loaded.size());
+    }
+}
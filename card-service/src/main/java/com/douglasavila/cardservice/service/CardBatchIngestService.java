@@ -5,114 +5,356 @@ import com.douglasavila.cardservice.entity.BatchStatus;
 import com.douglasavila.cardservice.entity.Card;
 import com.douglasavila.cardservice.entity.CardStatus;
 import com.douglasavila.cardservice.repository.BatchRepository;
-import com.douglasavila.cardservice.repository.BatchStatusRepository;
-import com.douglasavila.cardservice.repository.CardRepository;
-import com.douglasavila.cardservice.repository.CardStatusRepository;
+import com.douglasavila.cardservice.repository.CardBulkWriter;
+import com.douglasavila.cardservice.util.BatchLineReader;
 import com.douglasavila.cardservice.util.BatchParser;
-import jakarta.transaction.Transactional;
+import com.douglasavila.cardservice.util.DigestSet;
+import com.douglasavila.cardservice.util.MappedBatchFile;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class CardBatchIngestService {
 
-    private final CardRepository cardRepository;
-    private final CardStatusRepository cardStatusRepository;
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
     private final BatchRepository batchRepository;
-    private final BatchStatusRepository batchStatusRepository;
+    private final StatusRegistry statusRegistry;
     private final BatchParser batchParser;
+    private final CardBulkWriter cardBulkWriter;
+    private final CardLookupService cardLookupService;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+    private final int pipelineQueueCapacity;
 
     public CardBatchIngestService(
-            CardRepository cardRepository,
-            CardStatusRepository cardStatusRepository,
             BatchRepository batchRepository,
-            BatchStatusRepository batchStatusRepository, BatchParser batchParser) {
-        this.cardRepository = cardRepository;
-        this.cardStatusRepository = cardStatusRepository;
+            StatusRegistry statusRegistry,
+            BatchParser batchParser,
+            CardBulkWriter cardBulkWriter,
+            CardLookupService cardLookupService,
+            PlatformTransactionManager transactionManager,
+            @Value("${card.ingest.chunk-size:1000}") int chunkSize,
+            @Value("${card.ingest.pipeline.queue-capacity:16}") int pipelineQueueCapacity) {
         this.batchRepository = batchRepository;
-        this.batchStatusRepository = batchStatusRepository;
+        this.statusRegistry = statusRegistry;
         this.batchParser = batchParser;
+        this.cardBulkWriter = cardBulkWriter;
+        this.cardLookupService = cardLookupService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+        this.pipelineQueueCapacity = pipelineQueueCapacity;
     }
 
-    @Transactional
+    /**
+     * Ingests a batch file committing every {@code card.ingest.chunk-size} cards in its own
+     * transaction, so memory stays flat regardless of the file size and the batch's
+     * processedRecords column shows the progress while the file is still being read.
+     * <p>
+     * Each committed chunk also records a checkpoint (last sequence number and the byte
+     * offset after it). If processing stops halfway the batch is marked FAILED, and sending
+     * the same file again skips straight to the first record that was not committed.
+     * <p>
+     * Parsing and hashing run ahead of the database on a {@link CardIngestPipeline}, so the
+     * CPU work of the next chunks overlaps with the round trips of the current one.
+     * <p>
+     * Cards repeating one already read from the same file are counted in the batch's
+     * duplicateRecords and left out before the chunk reaches the database; they still count
+     * as processed. A resumed batch only recognizes repeats of cards read since the checkpoint,
+     * earlier ones are skipped by the writer as before.
+     */
     public void ingest(InputStream in, Charset charset) throws IOException {
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(in, charset), 64 * 1024)) {
-
-            String line = br.readLine();
-            Batch newBatch = batchParser.parseHeaderLine(line);
-
-            BatchStatus batchReceivedStatus = batchStatusRepository.
-                    findByBatchStatusName(BatchStatus.Values.RECEIVED.name());
-            BatchStatus batchProcessedStatus = batchStatusRepository.
-                    findByBatchStatusName(BatchStatus.Values.PROCESSED.name());
-            BatchStatus batchPartiallyProcessedStatus = batchStatusRepository.
-                    findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name());
-            BatchStatus batchFailedStatus = batchStatusRepository.
-                    findByBatchStatusName(BatchStatus.Values.FAILED.name());
-
-            CardStatus cardValidStatus = cardStatusRepository.
-                    findByCardStatusName(CardStatus.Values.VALID.name());
-
-            var existingBatch = batchRepository.findByBatchCodeAndFileName(
-                    newBatch.getBatchCode(), newBatch.getFileName());
-
-            if(existingBatch.isPresent()) {
-                if (!batchFailedStatus.equals(existingBatch.get().getBatchStatus())
-                && !batchPartiallyProcessedStatus.equals(existingBatch.get().getBatchStatus())) {
-                    return;
+        try (BatchLineReader reader = new BatchLineReader(in, charset)) {
+
+            Batch parsedHeader = batchParser.parseHeaderLine(reader.readLine());
+            Optional<Batch> startedBatch = startBatch(parsedHeader, false);
+            if (startedBatch.isEmpty()) return;
+
+            Batch newBatch = startedBatch.get();
+            int processedRecordsCount = newBatch.getProcessedRecords();
+            int committedRecordsCount = processedRecordsCount;
+            int duplicateRecordsCount = newBatch.getDuplicateRecords();
+            DigestSet seenCards = new DigestSet(newBatch.getExpectedRecords());
+
+            try {
+                if (newBatch.getCheckpointOffset() != null) {
+                    skipToCheckpoint(reader, newBatch);
                 }
 
-                newBatch.setBatchId(existingBatch.get().getBatchId());
+                // Create cards, persisting each parsed chunk in file order
+                try (CardIngestPipeline pipeline = CardIngestPipeline.start(
+                        reader, batchParser, newBatch.getBatchCode(), chunkSize, pipelineQueueCapacity)) {
+
+                    CardIngestPipeline.ParsedChunk chunk;
+                    while ((chunk = pipeline.next()) != null) {
+                        if (chunk.cards().isEmpty()) continue;
+
+                        List<Card> newCards = dropRepeatedCards(chunk.cards(), seenCards);
+                        prepareCards(newCards, newBatch);
+
+                        processedRecordsCount += chunk.cards().size();
+                        duplicateRecordsCount += chunk.cards().size() - newCards.size();
+                        commitChunk(newBatch, newCards, chunk.cards().getLast().getBatchSequenceNumber(),
+                                processedRecordsCount, duplicateRecordsCount, chunk.endOffset());
+                        committedRecordsCount = processedRecordsCount;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                markFailed(newBatch, committedRecordsCount, newBatch.getDuplicateRecords());
+                throw new IOException("Batch ingestion was interrupted", e);
+            } catch (IOException | RuntimeException e) {
+                markFailed(newBatch, committedRecordsCount, newBatch.getDuplicateRecords());
+                throw e;
             }
 
-            // Finish creating initial batch
-            newBatch.setBatchStatus(batchReceivedStatus);
-            batchRepository.save(newBatch);
+            finishBatch(newBatch, processedRecordsCount, duplicateRecordsCount);
+        }
+    }
+
+    /**
+     * Ingests a batch file that is already on local disk. Instead of streaming it line by line,
+     * the file is memory-mapped, split into byte ranges on line boundaries and parsed by a
+     * fork-join pool across all cores; each range commits its own chunks and adds them to the
+     * batch's processedRecords.
+     * <p>
+     * Ranges finish in no particular order, so no checkpoint is recorded. A batch is started
+     * from the checkpoint a failed streamed run left, if any; when this run fails too, the
+     * checkpoint is cleared, since the ranges it committed past it are already counted. The
+     * batch is then sent again from the first card line, counting from zero, and the cards a
+     * failed run already committed are skipped by the writer.
+     * <p>
+     * Repeated cards are left out and counted in duplicateRecords as in {@link #ingest}; the
+     * ranges share one set of the cards read so far, so which copy is kept is not defined.
+     */
+    public void ingestFile(Path path, Charset charset) throws IOException {
+        Optional<Batch> startedBatch = startFile(path, charset);
+        if (startedBatch.isPresent()) {
+            ingestStartedFile(path, charset, startedBatch.get());
+        }
+    }
 
+    /**
+     * First half of {@link #ingestFile}: reads the header and creates or takes over the batch
+     * row, RECEIVED. Empty when the batch was already processed.
+     */
+    public Optional<Batch> startFile(Path path, Charset charset) throws IOException {
+        try (MappedBatchFile file = MappedBatchFile.open(path)) {
+            return startBatch(batchParser.parseHeaderLine(file.readLine(0, charset)), false);
+        }
+    }
 
-            // Start processing cards
-            int processedRecordsCount = 0;
+    /**
+     * Like {@link #startFile}, for a file whose ingestion was cut short by a restart: a batch
+     * still RECEIVED is taken over as if it had FAILED and processed again from its first card
+     * line. Only for files no other instance can be ingesting.
+     */
+    public Optional<Batch> restartFile(Path path, Charset charset) throws IOException {
+        try (MappedBatchFile file = MappedBatchFile.open(path)) {
+            return startBatch(batchParser.parseHeaderLine(file.readLine(0, charset)), true);
+        }
+    }
 
-            // Create cards
-            while ((line = br.readLine()) != null) {
-                if (line.isBlank()) continue;
+    /** Second half of {@link #ingestFile}: ingests the card lines of a batch started by {@link #startFile}. */
+    public void ingestStartedFile(Path path, Charset charset, Batch newBatch) throws IOException {
+        try (MappedBatchFile file = MappedBatchFile.open(path)) {
 
-                // Trailer line(Cards list end)
-                if (line.substring(0, 8).equals(newBatch.getBatchCode())) break;
+            int previousRecordsCount = newBatch.getProcessedRecords();
+            int previousDuplicatesCount = newBatch.getDuplicateRecords();
+            DigestSet seenCards = new DigestSet(newBatch.getExpectedRecords());
+            AtomicInteger committedDuplicates = new AtomicInteger();
 
-                Optional<Card> optionalCard = batchParser.parseCardLines(line);
+            MappedBatchIngestion ingestion = new MappedBatchIngestion(
+                    file, batchParser, charset, newBatch.getBatchCode(), chunkSize, PARALLELISM,
+                    chunk -> {
+                        List<Card> newCards;
+                        synchronized (seenCards) {
+                            newCards = dropRepeatedCards(chunk, seenCards);
+                        }
+                        prepareCards(newCards, newBatch);
 
-                if (optionalCard.isPresent()) {
-                    Card card = optionalCard.get();
+                        int duplicates = chunk.size() - newCards.size();
+                        commitRange(newBatch, newCards, chunk.size(), duplicates);
+                        committedDuplicates.addAndGet(duplicates);
+                    });
 
-                    if (cardRepository.findByCardHash(card.getCardHash()).isEmpty()) {
-                        card.setBatch(newBatch);
-                        card.setCardStatus(cardValidStatus);
+            int processedRecordsCount;
 
-                        cardRepository.save(card);
-                    }
+            // The pool is closed before the catch, so no range still commits while the batch is marked failed
+            try (ForkJoinPool pool = new ForkJoinPool(PARALLELISM)) {
+                long bodyStart = newBatch.getCheckpointOffset() != null
+                        ? newBatch.getCheckpointOffset()
+                        : file.lineStartAtOrAfter(1);
 
-                    processedRecordsCount++;
+                if (bodyStart > file.size()) {
+                    // The file is shorter than the checkpoint, so the next attempt must start over
+                    newBatch.setLastSequenceNumber(null);
+                    newBatch.setCheckpointOffset(null);
+                    throw new EOFException("Batch file ends before checkpoint offset " + bodyStart);
                 }
+
+                long bodyEnd = ingestion.findBodyEnd(pool, bodyStart);
+                processedRecordsCount = previousRecordsCount + ingestion.ingest(pool, bodyStart, bodyEnd);
+            } catch (IOException | RuntimeException e) {
+                // Resuming from the old checkpoint would count the committed ranges again
+                newBatch.setLastSequenceNumber(null);
+                newBatch.setCheckpointOffset(null);
+                markFailed(newBatch, previousRecordsCount + ingestion.committedRecords(),
+                        previousDuplicatesCount + committedDuplicates.get());
+                throw e;
             }
 
-            // Done processing
-            newBatch.setProcessingDate(Instant.now());
-            newBatch.setProcessedRecords(processedRecordsCount);
-            newBatch.setBatchStatus(batchProcessedStatus);
+            finishBatch(newBatch, processedRecordsCount, previousDuplicatesCount + committedDuplicates.get());
+        }
+    }
+
+    /**
+     * Creates the batch row, or takes over an existing one that is FAILED or PARTIALLY_PROCESSED
+     * (or RECEIVED, when takeOverReceived), committed on its own so cards can reference it. Empty when the batch was already processed.
+     */
+    private Optional<Batch> startBatch(Batch newBatch, boolean takeOverReceived) {
+        var existingBatch = batchRepository.findByBatchCodeAndFileName(
+                newBatch.getBatchCode(), newBatch.getFileName());
 
-            if (newBatch.getExpectedRecords() != processedRecordsCount) {
-                newBatch.setBatchStatus(batchPartiallyProcessedStatus);
+        if(existingBatch.isPresent()) {
+            if (!hasStatus(existingBatch.get(), BatchStatus.Values.FAILED)
+            && !hasStatus(existingBatch.get(), BatchStatus.Values.PARTIALLY_PROCESSED)
+            && !(takeOverReceived && hasStatus(existingBatch.get(), BatchStatus.Values.RECEIVED))) {
+                return Optional.empty();
             }
 
-            batchRepository.save(newBatch);
+            newBatch.setBatchId(existingBatch.get().getBatchId());
+        }
+
+        // Start processing cards, from the checkpoint when resuming an interrupted batch
+        int processedRecordsCount = 0;
+        int duplicateRecordsCount = 0;
+
+        if (existingBatch.isPresent() && canResume(existingBatch.get(), newBatch)) {
+            Batch interruptedBatch = existingBatch.get();
+            processedRecordsCount = interruptedBatch.getProcessedRecords();
+            duplicateRecordsCount = Objects.requireNonNullElse(interruptedBatch.getDuplicateRecords(), 0);
+            newBatch.setLastSequenceNumber(interruptedBatch.getLastSequenceNumber());
+            newBatch.setCheckpointOffset(interruptedBatch.getCheckpointOffset());
+        }
+
+        newBatch.setBatchStatus(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED));
+        newBatch.setProcessedRecords(processedRecordsCount);
+        newBatch.setDuplicateRecords(duplicateRecordsCount);
+        newBatch.setStartedDate(Instant.now());
+        batchRepository.save(newBatch);
+
+        return Optional.of(newBatch);
+    }
+
+    // Done processing. Every chunk is committed, so a later resend starts from line one
+    private void finishBatch(Batch batch, int processedRecords, int duplicateRecords) {
+        batch.setProcessingDate(Instant.now());
+        batch.setProcessedRecords(processedRecords);
+        batch.setDuplicateRecords(duplicateRecords);
+        batch.setLastSequenceNumber(null);
+        batch.setCheckpointOffset(null);
+        batch.setBatchStatus(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED));
+
+        if (batch.getExpectedRecords() != processedRecords) {
+            batch.setBatchStatus(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED));
+        }
+
+        batchRepository.save(batch);
+    }
+
+    // Cards whose hash was already read from this file; they would only be skipped by the writer
+    private static List<Card> dropRepeatedCards(List<Card> cards, DigestSet seenCards) {
+        List<Card> newCards = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            byte[] digest = card.getCardHashDigest();
+            if (digest != null ? seenCards.add(digest) : seenCards.add(card.getCardHash())) newCards.add(card);
+        }
+        return newCards;
+    }
+
+    private void prepareCards(List<Card> cards, Batch batch) {
+        CardStatus cardValidStatus = statusRegistry.cardStatus(CardStatus.Values.VALID);
+
+        for (Card card : cards) {
+            // Cards already stored are skipped by the writer itself
+            card.setBatch(batch);
+            card.setCardStatus(cardValidStatus);
+        }
+    }
+
+    private void commitChunk(Batch batch, List<Card> newCards, String lastSequenceNumber,
+                             int processedRecords, int duplicateRecords, long checkpointOffset) {
+        transactionTemplate.executeWithoutResult(status -> {
+            cardBulkWriter.write(newCards);
+            batchRepository.updateProgress(
+                    batch.getBatchId(), processedRecords, duplicateRecords, lastSequenceNumber, checkpointOffset);
+        });
+        invalidateLookups(newCards);
+
+        batch.setDuplicateRecords(duplicateRecords);
+        batch.setLastSequenceNumber(lastSequenceNumber);
+        batch.setCheckpointOffset(checkpointOffset);
+    }
+
+    private void commitRange(Batch batch, List<Card> newCards, int records, int duplicateRecords) {
+        transactionTemplate.executeWithoutResult(status -> {
+            cardBulkWriter.write(newCards);
+            batchRepository.addProcessedRecords(batch.getBatchId(), records, duplicateRecords);
+        });
+        invalidateLookups(newCards);
+    }
+
+    // After the commit, so a lookup cannot cache the miss again before the cards are visible
+    private void invalidateLookups(List<Card> chunk) {
+        cardLookupService.invalidate(chunk.stream().map(Card::getCardHash).toList());
+    }
+
+    private void markFailed(Batch batch, int committedRecords, int committedDuplicates) {
+        batch.setProcessedRecords(committedRecords);
+        batch.setDuplicateRecords(committedDuplicates);
+        batch.setBatchStatus(statusRegistry.batchStatus(BatchStatus.Values.FAILED));
+        batchRepository.save(batch);
+    }
+
+    // Only a FAILED batch stopped halfway; the header must match or the file is a different one
+    private static boolean canResume(Batch existingBatch, Batch newBatch) {
+        return BatchStatus.Values.FAILED.name().equals(existingBatch.getBatchStatus().getBatchStatusName())
+                && existingBatch.getCheckpointOffset() != null
+                && existingBatch.getProcessedRecords() != null
+                && existingBatch.getExpectedRecords().equals(newBatch.getExpectedRecords())
+                && existingBatch.getFileDate().equals(newBatch.getFileDate());
+    }
+
+    private static void skipToCheckpoint(BatchLineReader reader, Batch batch) throws IOException {
+        try {
+            reader.skipTo(batch.getCheckpointOffset());
+        } catch (EOFException e) {
+            // The file is shorter than the checkpoint, so the next attempt must start over
+            batch.setLastSequenceNumber(null);
+            batch.setCheckpointOffset(null);
+            throw e;
         }
     }
+
+    // Compared by name: the existing batch is loaded outside of the ingestion transactions
+    private static boolean hasStatus(Batch batch, BatchStatus.Values status) {
+        return batch.getBatchStatus() != null
+                && batch.getBatchStatus().getBatchStatusName().equals(status.name());
+    }
 }
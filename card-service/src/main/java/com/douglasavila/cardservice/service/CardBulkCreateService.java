@@ -0,0 +1,120 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.entity.CardStatus;
+import com.douglasavila.cardservice.repository.CardBulkWriter;
+import com.douglasavila.cardservice.util.BinRangeIndex;
+import com.douglasavila.cardservice.util.CardHasher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Creates many cards in one request. Card numbers are streamed through a {@link CardNumberStream}
+ * {@code card.ingest.chunk-size} at a time; each chunk is validated and hashed in parallel, checked
+ * against the stored cards with one {@code IN} query (or the lookup cache) and written by the
+ * {@link CardBulkWriter} in a single transaction.
+ * <p>
+ * A card number that is already stored, or repeats earlier in the same chunk, is reported as
+ * EXISTS. One created concurrently by another request after the check is still skipped by the
+ * writer, but reported as CREATED.
+ */
+@Service
+public class CardBulkCreateService {
+
+    public enum Status { CREATED, EXISTS, INVALID }
+
+    public record CardCreateResult(Status status) {
+    }
+
+    private static final CardCreateResult CREATED = new CardCreateResult(Status.CREATED);
+    private static final CardCreateResult EXISTS = new CardCreateResult(Status.EXISTS);
+    private static final CardCreateResult INVALID = new CardCreateResult(Status.INVALID);
+
+    private final CardHasher hasher;
+    private final CardLookupService cardLookupService;
+    private final CardBulkWriter cardBulkWriter;
+    private final StatusRegistry statusRegistry;
+    private final BinTable binTable;
+    private final TransactionTemplate transactionTemplate;
+    private final CardNumberStream cardNumberStream;
+    private final boolean luhn;
+
+    public CardBulkCreateService(
+            CardHasher hasher,
+            CardLookupService cardLookupService,
+            CardBulkWriter cardBulkWriter,
+            StatusRegistry statusRegistry,
+            BinTable binTable,
+            PlatformTransactionManager transactionManager,
+            JsonMapper jsonMapper,
+            @Value("${card.ingest.chunk-size:1000}") int chunkSize,
+            @Value("${card.validation.luhn.enabled:false}") boolean luhn) {
+        this.hasher = hasher;
+        this.cardLookupService = cardLookupService;
+        this.cardBulkWriter = cardBulkWriter;
+        this.statusRegistry = statusRegistry;
+        this.binTable = binTable;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cardNumberStream = new CardNumberStream(jsonMapper, CardCreateResult.class, chunkSize);
+        this.luhn = luhn;
+    }
+
+    /**
+     * Reads card numbers from cardNumbers, creates the new ones and writes one result per card
+     * number to results. The cards of every chunk whose results were written are committed.
+     */
+    public void create(InputStream cardNumbers, OutputStream results) throws IOException {
+        cardNumberStream.process(cardNumbers, results, this::createChunk);
+    }
+
+    private List<CardCreateResult> createChunk(List<String> cardNumbers) {
+        String[] cardHashes = CardNumberStream.hashValid(hasher, cardNumbers, luhn);
+
+        Map<String, Optional<UUID>> storedCardIds = cardLookupService.findCardIds(
+                Arrays.stream(cardHashes).filter(Objects::nonNull).distinct().toList());
+
+        CardStatus cardValidStatus = statusRegistry.cardStatus(CardStatus.Values.VALID);
+        BinRangeIndex bins = binTable.current();
+        List<CardCreateResult> results = new ArrayList<>(cardHashes.length);
+        List<Card> newCards = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        for (int i = 0; i < cardHashes.length; i++) {
+            String cardHash = cardHashes[i];
+
+            if (cardHash == null) {
+                results.add(INVALID);
+            } else if (storedCardIds.get(cardHash).isPresent() || !seen.add(cardHash)) {
+                results.add(EXISTS);
+            } else {
+                String cardNumber = cardNumbers.get(i).trim();
+                Card card = new Card(cardHash, hasher.last4(cardNumber), cardValidStatus);
+                bins.classify(card, cardNumber);
+                newCards.add(card);
+                results.add(CREATED);
+            }
+        }
+
+        if (!newCards.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> cardBulkWriter.write(newCards));
+            cardLookupService.invalidate(newCards.stream().map(Card::getCardHash).toList());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,77 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.util.CardHasher;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Resolves many card numbers in one request. Card numbers are streamed through a
+ * {@link CardNumberStream} {@code card.lookup.bulk.chunk-size} at a time: each chunk is
+ * validated and hashed in parallel and resolved with one {@code IN} query (or the lookup cache).
+ */
+@Service
+public class CardBulkLookupService {
+
+    public enum Status { FOUND, NOT_FOUND, INVALID }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record CardLookupResult(Status status, String cardId) {
+    }
+
+    private static final CardLookupResult INVALID = new CardLookupResult(Status.INVALID, null);
+    private static final CardLookupResult NOT_FOUND = new CardLookupResult(Status.NOT_FOUND, null);
+
+    private final CardHasher hasher;
+    private final CardLookupService cardLookupService;
+    private final CardNumberStream cardNumberStream;
+    private final boolean luhn;
+
+    public CardBulkLookupService(
+            CardHasher hasher,
+            CardLookupService cardLookupService,
+            JsonMapper jsonMapper,
+            @Value("${card.lookup.bulk.chunk-size:1000}") int chunkSize,
+            @Value("${card.validation.luhn.enabled:false}") boolean luhn) {
+        this.hasher = hasher;
+        this.cardLookupService = cardLookupService;
+        this.cardNumberStream = new CardNumberStream(jsonMapper, CardLookupResult.class, chunkSize);
+        this.luhn = luhn;
+    }
+
+    /** Reads card numbers from cardNumbers and writes their results to results. */
+    public void lookup(InputStream cardNumbers, OutputStream results) throws IOException {
+        cardNumberStream.process(cardNumbers, results, this::resolve);
+    }
+
+    private List<CardLookupResult> resolve(List<String> cardNumbers) {
+        String[] cardHashes = CardNumberStream.hashValid(hasher, cardNumbers, luhn);
+
+        Map<String, Optional<UUID>> cardIds = cardLookupService.findCardIds(
+                Arrays.stream(cardHashes).filter(Objects::nonNull).distinct().toList());
+
+        List<CardLookupResult> results = new ArrayList<>(cardHashes.length);
+        for (String cardHash : cardHashes) {
+            if (cardHash == null) {
+                results.add(INVALID);
+            } else {
+                results.add(cardIds.get(cardHash)
+                        .map(cardId -> new CardLookupResult(Status.FOUND, cardId.toString()))
+                        .orElse(NOT_FOUND));
+            }
+        }
+        return results;
+    }
+}
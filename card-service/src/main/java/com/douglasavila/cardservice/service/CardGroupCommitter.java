@@ -0,0 +1,185 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.repository.CardBulkWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for single card creations, enabled by {@code card.create.group-commit.enabled}.
+ * Callers queue their card and wait; one writer thread takes whatever is queued, waits up to
+ * {@code max-delay} for more (at most {@code max-size} cards), and stores the group with one
+ * batched INSERT that skips existing cards and one commit. Each caller returns once its group is committed.
+ * <p>
+ * Under load this turns many tiny transactions into a few large ones, at the price of up to
+ * {@code max-delay} of extra latency per creation. A card that already exists, or repeats in
+ * the group, is skipped by the writer like in batch ingestion.
+ */
+@Service
+public class CardGroupCommitter implements SmartLifecycle {
+
+    private record PendingCard(Card card, CompletableFuture<Void> committed) {
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(CardGroupCommitter.class);
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final CardBulkWriter cardBulkWriter;
+    private final CardLookupService cardLookupService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long maxDelayNanos;
+    private final int maxSize;
+
+    private final BlockingQueue<PendingCard> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public CardGroupCommitter(
+            CardBulkWriter cardBulkWriter,
+            CardLookupService cardLookupService,
+            PlatformTransactionManager transactionManager,
+            @Value("${card.create.group-commit.enabled:false}") boolean enabled,
+            @Value("${card.create.group-commit.max-delay:5ms}") Duration maxDelay,
+            @Value("${card.create.group-commit.max-size:500}") int maxSize) {
+        this.cardBulkWriter = cardBulkWriter;
+        this.cardLookupService = cardLookupService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.maxSize = maxSize;
+        // Callers block once this many cards are waiting, so a stalled database cannot exhaust memory
+        this.queue = new LinkedBlockingQueue<>(maxSize * 4);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the card and waits until the group it joined is committed. Failures of that commit
+     * are rethrown to every caller of the group.
+     */
+    public void create(Card card) throws InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Group commit is not running");
+        }
+
+        PendingCard pending = new PendingCard(card, new CompletableFuture<>());
+        queue.put(pending);
+
+        // Put after stop() drained the queue, so neither the writer nor stop() will complete it
+        if (!running && queue.remove(pending)) {
+            throw new IllegalStateException("Group commit is not running");
+        }
+
+        try {
+            pending.committed().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException failure) throw failure;
+            throw e;
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+
+        running = true;
+        writer = Thread.ofPlatform().name("card-group-commit").daemon().start(this::writeGroups);
+    }
+
+    /** Stops taking new cards and waits for the queued ones to be committed. */
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Queued while the writer was finishing its last group
+        PendingCard late;
+        while ((late = queue.poll()) != null) {
+            late.committed().completeExceptionally(new IllegalStateException("Group commit is not running"));
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void writeGroups() {
+        List<PendingCard> group = new ArrayList<>(maxSize);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                PendingCard first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+
+                group.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+
+                while (group.size() < maxSize) {
+                    queue.drainTo(group, maxSize - group.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (group.size() >= maxSize || remaining <= 0) break;
+
+                    PendingCard next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    group.add(next);
+                }
+
+                try {
+                    commit(group);
+                } catch (RuntimeException e) {
+                    // Keeps the writer alive; a caller left waiting would never return
+                    log.error("Could not finish the group commit of {} cards", group.size(), e);
+                    group.forEach(pending -> pending.committed().completeExceptionally(e));
+                } finally {
+                    group.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commit(List<PendingCard> group) {
+        List<Card> cards = group.stream().map(PendingCard::card).toList();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> cardBulkWriter.write(cards));
+        } catch (RuntimeException e) {
+            group.forEach(pending -> pending.committed().completeExceptionally(e));
+            return;
+        }
+
+        try {
+            cardLookupService.invalidate(cards.stream().map(Card::getCardHash).toList());
+        } finally {
+            // Committed either way; a lookup cached before the commit may still miss until it expires
+            group.forEach(pending -> pending.committed().complete(null));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import com.douglasavila.cardservice.util.ScalableBloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Bloom filter over every stored card hash, enabled by {@code card.lookup.filter.enabled}. A
+ * hash the filter has never seen is certainly not stored, so lookups answer "not found"
+ * without asking the database; most card numbers in a daily file are new, and this is the
+ * answer their lookups would get anyway.
+ * <p>
+ * On start every card hash is read in keyset pages of {@code load-page-size} on a background
+ * thread; until that finishes {@link #mightContain} answers true for everything. Cards inserted
+ * meanwhile and afterwards are {@link #add added} by {@link CardLookupService#invalidate}, so
+ * the filter is only correct when every insert into the cards table goes through this
+ * instance. The filter starts sized for {@code expected-insertions} hashes and grows past that
+ * while keeping the false positive rate under {@code false-positive-rate}.
+ * <p>
+ * Published as {@code card.hash.filter.*}: its memory, the hashes it holds, the estimated and
+ * configured false positive rate and the checks it answered, tagged by result. Checks the
+ * filter let through that the database then did not find are counted as false positives.
+ */
+@Service
+public class CardHashFilter implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(CardHashFilter.class);
+
+    private final CardRepository cardRepository;
+    private final boolean enabled;
+    private final int loadPageSize;
+    private final ScalableBloomFilter filter;
+
+    private final Counter absentChecks;
+    private final Counter presentChecks;
+    private final Counter falsePositives;
+
+    private volatile boolean loaded;
+    private volatile boolean running;
+    private Thread loader;
+
+    public CardHashFilter(
+            CardRepository cardRepository,
+            MeterRegistry meterRegistry,
+            @Value("${card.lookup.filter.enabled:false}") boolean enabled,
+            @Value("${card.lookup.filter.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${card.lookup.filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${card.lookup.filter.load-page-size:10000}") int loadPageSize) {
+        this.cardRepository = cardRepository;
+        this.enabled = enabled;
+        this.loadPageSize = loadPageSize;
+        this.filter = enabled ? new ScalableBloomFilter(expectedInsertions, falsePositiveRate) : null;
+
+        this.absentChecks = Counter.builder("card.hash.filter.checks").tag("result", "absent").register(meterRegistry);
+        this.presentChecks = Counter.builder("card.hash.filter.checks").tag("result", "maybe").register(meterRegistry);
+        this.falsePositives = Counter.builder("card.hash.filter.false.positives").register(meterRegistry);
+
+        if (enabled) {
+            Gauge.builder("card.hash.filter.memory", filter, ScalableBloomFilter::memoryBytes)
+                    .baseUnit("bytes").register(meterRegistry);
+            Gauge.builder("card.hash.filter.size", filter, ScalableBloomFilter::size).register(meterRegistry);
+            Gauge.builder("card.hash.filter.fpp", filter, ScalableBloomFilter::estimatedFalsePositiveRate)
+                    .tag("kind", "estimated").register(meterRegistry);
+            Gauge.builder("card.hash.filter.fpp", () -> falsePositiveRate)
+                    .tag("kind", "configured").register(meterRegistry);
+        }
+    }
+
+    /** False only when the card hash is certainly not stored. */
+    public boolean mightContain(String cardHash) {
+        if (!loaded) return true;
+
+        if (filter.mightContain(cardHash)) {
+            presentChecks.increment();
+            return true;
+        }
+        absentChecks.increment();
+        return false;
+    }
+
+    public void add(String cardHash) {
+        if (enabled) filter.add(cardHash);
+    }
+
+    /** Records that a hash the filter let through was not stored after all. */
+    void falsePositive() {
+        if (loaded) falsePositives.increment();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+
+        running = true;
+        loader = Thread.ofPlatform().name("card-hash-filter-load").daemon().start(this::load);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        // The loader checks this between pages
+        running = false;
+        try {
+            loader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void load() {
+        try {
+            List<CardIdByHash> page = cardRepository.findCardHashPage(Limit.of(loadPageSize));
+
+            while (!page.isEmpty() && running) {
+                page.forEach(card -> filter.add(card.cardHash()));
+                page = cardRepository.findCardHashPageAfter(page.getLast().cardId(), Limit.of(loadPageSize));
+            }
+
+            if (running) {
+                loaded = true;
+                log.info("Card hash filter loaded: {} hashes in {} bytes", filter.size(), filter.memoryBytes());
+            }
+        } catch (RuntimeException e) {
+            // Lookups keep going to the database, just without the filter's shortcut
+            log.error("Card hash filter could not be loaded", e);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import com.douglasavila.cardservice.util.MappedCardIndex;
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Local card hash to card id index, enabled by {@code card.lookup.index.enabled}, kept in a
+ * {@link MappedCardIndex} file at {@code card.lookup.index.path}. The table lives off-heap and
+ * survives restarts, so card lookups are answered from it without a query as soon as the
+ * service starts.
+ * <p>
+ * A background thread copies new cards from the cards table into the index, every
+ * {@code reconcile-interval} or as soon as {@link CardLookupService#invalidate} reports an
+ * insert. It reads in keyset pages of {@code reconcile-page-size} from a mark kept in the file,
+ * going back {@code reconcile-overlap} before it since ids of concurrent transactions do not
+ * commit in order. Reading the table, instead of the ids the inserting code generated, keeps
+ * the index right for batch rows skipped as duplicates, and for cards inserted by other
+ * instances. A file that was not closed cleanly is reconciled from the first card again.
+ * <p>
+ * Only UUIDv7 ids say when a card was created, so only they move the mark, compared in the
+ * order the database sorts ids. Cards with older random ids are read by the pass from the
+ * first card; the rounds after it stop at ids from later than now plus the overlap, instead of
+ * reading those random ids again every time.
+ * <p>
+ * The file records the first card of the table it was copied from. On start and before every
+ * round, that card and the mark must still be in the table; otherwise the database was reset
+ * or restored since, and the file is rebuilt from scratch while lookups go to the database,
+ * so it never answers with ids of cards that are gone.
+ * <p>
+ * A hash missing from the index may just not be reconciled yet, so misses still go to the
+ * database. The index holds up to {@code capacity} cards; a file sized for fewer is rebuilt
+ * larger on start, and once full, new cards are only found through the database.
+ * <p>
+ * Published as {@code card.id.index.*}: the cards it holds, its file size and the lookups it
+ * answered, tagged by result.
+ */
+@Service
+public class CardIdIndex implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(CardIdIndex.class);
+
+    private final CardRepository cardRepository;
+    private final boolean enabled;
+    private final Path path;
+    private final long capacity;
+    private final Duration reconcileInterval;
+    private final Duration reconcileOverlap;
+    private final int reconcilePageSize;
+    private final MeterRegistry meterRegistry;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Object reconcileSignal = new Object();
+
+    private volatile MappedCardIndex index;
+    private volatile boolean running;
+    private boolean refreshRequested;
+    private volatile boolean fullLogged;
+    private Thread reconciler;
+
+    public CardIdIndex(
+            CardRepository cardRepository,
+            MeterRegistry meterRegistry,
+            @Value("${card.lookup.index.enabled:false}") boolean enabled,
+            @Value("${card.lookup.index.path:${java.io.tmpdir}/card-id.index}") Path path,
+            @Value("${card.lookup.index.capacity:10000000}") long capacity,
+            @Value("${card.lookup.index.reconcile-interval:5s}") Duration reconcileInterval,
+            @Value("${card.lookup.index.reconcile-overlap:10s}") Duration reconcileOverlap,
+            @Value("${card.lookup.index.reconcile-page-size:10000}") int reconcilePageSize) {
+        this.cardRepository = cardRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.path = path;
+        this.capacity = capacity;
+        this.reconcileInterval = reconcileInterval;
+        this.reconcileOverlap = reconcileOverlap;
+        this.reconcilePageSize = reconcilePageSize;
+
+        this.hits = Counter.builder("card.id.index.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("card.id.index.lookups").tag("result", "miss").register(meterRegistry);
+    }
+
+    /** The indexed card id of the hash; empty does not mean no such card is stored. */
+    public Optional<UUID> find(String cardHash) {
+        MappedCardIndex current = index;
+        if (current == null) return Optional.empty();
+
+        UUID cardId = current.get(cardHash);
+        (cardId == null ? misses : hits).increment();
+        return Optional.ofNullable(cardId);
+    }
+
+    /** Indexes a card read from the database. */
+    public void put(String cardHash, UUID cardId) {
+        MappedCardIndex current = index;
+        if (current != null) store(current, cardHash, cardId);
+    }
+
+    /** Wakes the reconciler, so cards just inserted are indexed without waiting for the interval. */
+    public void refresh() {
+        if (!running) return;
+
+        synchronized (reconcileSignal) {
+            refreshRequested = true;
+            reconcileSignal.notifyAll();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) return;
+
+        MappedCardIndex opened;
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            opened = MappedCardIndex.open(path, capacity);
+            if (!matchesCardsTable(opened)) opened = rebuild(opened);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open card index " + path, e);
+        }
+
+        if (!opened.wasCleanlyClosed()) {
+            log.warn("Card index {} was not closed cleanly, reconciling it from the first card", path);
+            opened.setMark(null);
+        }
+        index = opened;
+
+        Gauge.builder("card.id.index.size", this, CardIdIndex::indexSize).register(meterRegistry);
+        Gauge.builder("card.id.index.file", this, CardIdIndex::indexFileSize).baseUnit("bytes").register(meterRegistry);
+
+        running = true;
+        reconciler = Thread.ofPlatform().name("card-id-index-reconcile").daemon().start(this::reconcileLoop);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        running = false;
+        synchronized (reconcileSignal) {
+            reconcileSignal.notifyAll();
+        }
+
+        try {
+            reconciler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        MappedCardIndex current = index;
+        index = null;
+        if (current != null) close(current);
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void reconcileLoop() {
+        while (running) {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                // Lookups the index cannot answer keep going to the database
+                log.error("Card index reconciliation failed", e);
+            }
+
+            try {
+                synchronized (reconcileSignal) {
+                    if (!refreshRequested && running) reconcileSignal.wait(reconcileInterval.toMillis());
+                    refreshRequested = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void reconcile() {
+        MappedCardIndex current = index;
+        if (!matchesCardsTable(current)) {
+            // Lookups go to the database until the new file is in place
+            index = null;
+            try {
+                current = rebuild(current);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not rebuild card index " + path, e);
+            }
+            index = current;
+        }
+
+        UUID mark = current.mark();
+        // A mark that is not time-ordered cannot say where to resume from
+        boolean fromFirstCard = mark == null || !TimeOrderedUuid.isTimeOrdered(mark);
+        if (fromFirstCard) mark = null;
+
+        Limit limit = Limit.of(reconcilePageSize);
+        UUID before = TimeOrderedUuid.lowest(System.currentTimeMillis() + reconcileOverlap.toMillis());
+
+        List<CardIdByHash> page = fromFirstCard
+                ? cardRepository.findCardHashPage(limit)
+                : cardRepository.findCardHashPageBetween(overlapStart(mark), before, limit);
+
+        if (fromFirstCard && !page.isEmpty() && current.source() == null) {
+            current.setSource(page.getFirst().cardId());
+        }
+
+        while (!page.isEmpty() && running) {
+            mark = storePage(current, page, mark);
+
+            UUID last = page.getLast().cardId();
+            page = fromFirstCard
+                    ? cardRepository.findCardHashPageAfter(last, limit)
+                    : cardRepository.findCardHashPageBetween(last, before, limit);
+        }
+    }
+
+    // Stores the page's cards and moves the mark to its latest time-ordered id
+    private UUID storePage(MappedCardIndex current, List<CardIdByHash> page, UUID mark) {
+        UUID latest = mark;
+        for (CardIdByHash card : page) {
+            store(current, card.cardHash(), card.cardId());
+
+            UUID cardId = card.cardId();
+            if (TimeOrderedUuid.isTimeOrdered(cardId)
+                    && (latest == null || TimeOrderedUuid.DATABASE_ORDER.compare(cardId, latest) > 0)) {
+                latest = cardId;
+            }
+        }
+
+        if (latest != mark) current.setMark(latest);
+        return latest;
+    }
+
+    // The table the entries came from still holds its first card, and the last card reconciled
+    private boolean matchesCardsTable(MappedCardIndex current) {
+        List<CardIdByHash> first = cardRepository.findCardHashPage(Limit.of(1));
+        UUID firstCardId = first.isEmpty() ? null : first.getFirst().cardId();
+        UUID source = current.source();
+
+        if (source == null) {
+            // Nothing copied yet, or copied by a version that did not record its source
+            if (current.size() > 0) return false;
+            if (firstCardId != null) current.setSource(firstCardId);
+            return true;
+        }
+
+        UUID mark = current.mark();
+        return source.equals(firstCardId) && (mark == null || cardRepository.existsById(mark));
+    }
+
+    private MappedCardIndex rebuild(MappedCardIndex stale) throws IOException {
+        log.warn("Card index {} does not match the cards table, rebuilding it from the first card", path);
+        close(stale);
+        Files.delete(path);
+
+        MappedCardIndex rebuilt = MappedCardIndex.open(path, capacity);
+        matchesCardsTable(rebuilt);
+        return rebuilt;
+    }
+
+    private void close(MappedCardIndex current) {
+        try {
+            current.close();
+        } catch (IOException e) {
+            log.error("Could not close card index {}", path, e);
+        }
+    }
+
+    private long indexSize() {
+        MappedCardIndex current = index;
+        return current == null ? 0 : current.size();
+    }
+
+    private long indexFileSize() {
+        MappedCardIndex current = index;
+        return current == null ? 0 : current.fileSize();
+    }
+
+    private UUID overlapStart(UUID mark) {
+        long markMillis = TimeOrderedUuid.epochMillis(mark);
+        return TimeOrderedUuid.lowest(Math.max(0, markMillis - reconcileOverlap.toMillis()));
+    }
+
+    private void store(MappedCardIndex current, String cardHash, UUID cardId) {
+        if (current.put(cardHash, cardId) || fullLogged) return;
+
+        fullLogged = true;
+        log.warn("Card index {} is full at {} cards, raise card.lookup.index.capacity", path, current.size());
+    }
+}
@@ -0,0 +1,190 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.util.BatchLineReader;
+import com.douglasavila.cardservice.util.BatchParser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Staged ingestion of the card lines of a batch file:
+ * <ol>
+ *     <li>a reader thread splits the file into chunks of raw lines, stopping at the trailer;
+ *     each chunk copies its lines' bytes back to back into one array, so no line is decoded
+ *     into a String;</li>
+ *     <li>each chunk is parsed, validated and hashed by its own virtual thread;</li>
+ *     <li>the caller takes the parsed chunks back through {@link #next()} to persist them.</li>
+ * </ol>
+ * Chunks come out of {@link #next()} in file order, so batchSequenceNumber order and the
+ * checkpoint offsets stay consistent. The hand-off queue is bounded: once {@code queueCapacity}
+ * chunks are waiting for the persistence stage the reader blocks, which bounds memory to a
+ * few chunks whatever the file size.
+ */
+class CardIngestPipeline implements AutoCloseable {
+
+    /** Cards parsed from one chunk of lines, and the file offset right after its last line. */
+    record ParsedChunk(List<Card> cards, long endOffset) {
+    }
+
+    private static final ParsedChunk END_OF_FILE = new ParsedChunk(List.of(), -1);
+
+    private final BatchLineReader reader;
+    private final BatchParser batchParser;
+    private final byte[] trailerPrefix;
+    private final int chunkSize;
+    private final BlockingQueue<Future<ParsedChunk>> parsedChunks;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private boolean finished;
+
+    private CardIngestPipeline(BatchLineReader reader, BatchParser batchParser, String batchCode,
+                               int chunkSize, int queueCapacity) {
+        this.reader = reader;
+        this.batchParser = batchParser;
+        // The trailer starts with the 8-character batch code
+        this.trailerPrefix = batchCode.length() == 8 ? batchCode.getBytes(reader.getCharset()) : null;
+        this.chunkSize = chunkSize;
+        this.parsedChunks = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /** Starts reading the card lines that follow the reader's current position. */
+    static CardIngestPipeline start(BatchLineReader reader, BatchParser batchParser, String batchCode,
+                                    int chunkSize, int queueCapacity) {
+        CardIngestPipeline pipeline = new CardIngestPipeline(reader, batchParser, batchCode, chunkSize, queueCapacity);
+        pipeline.executor.submit(pipeline::readChunks);
+        return pipeline;
+    }
+
+    /**
+     * Returns the next parsed chunk in file order, blocking until it is ready, or null once
+     * the trailer or the end of the file is reached. Failures from the reader or a parser
+     * thread are rethrown here.
+     */
+    ParsedChunk next() throws IOException, InterruptedException {
+        if (finished) return null;
+
+        try {
+            ParsedChunk chunk = parsedChunks.take().get();
+            if (chunk == END_OF_FILE) {
+                finished = true;
+                return null;
+            }
+            return chunk;
+        } catch (ExecutionException e) {
+            finished = true;
+            switch (e.getCause()) {
+                case IOException io -> throw io;
+                case RuntimeException runtime -> throw runtime;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    /** Stops the reader and any parser still running, e.g. when persisting a chunk failed. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Void readChunks() throws InterruptedException {
+        try {
+            LineChunk lines = new LineChunk(chunkSize);
+
+            while (reader.nextLine()) {
+                byte[] line = reader.lineBytes();
+                int length = reader.lineLength();
+                if (isBlank(line, length)) continue;
+
+                // Trailer line(Cards list end)
+                if (isTrailer(line, length)) break;
+
+                lines.add(line, length);
+
+                if (lines.size() >= chunkSize) {
+                    submit(lines, reader.getOffset());
+                    lines = new LineChunk(chunkSize);
+                }
+            }
+
+            if (lines.size() > 0) {
+                submit(lines, reader.getOffset());
+            }
+            parsedChunks.put(CompletableFuture.completedFuture(END_OF_FILE));
+        } catch (IOException | RuntimeException e) {
+            parsedChunks.put(CompletableFuture.failedFuture(e));
+        }
+        return null;
+    }
+
+    private void submit(LineChunk lines, long endOffset) throws InterruptedException {
+        // Blocks while the queue is full, which is what keeps the reader from running ahead
+        parsedChunks.put(executor.submit(() -> parse(lines, endOffset)));
+    }
+
+    private ParsedChunk parse(LineChunk lines, long endOffset) {
+        List<Card> cards = new ArrayList<>(lines.size());
+
+        for (int i = 0; i < lines.size(); i++) {
+            Card card = batchParser.parseCardLine(lines.bytes, lines.start(i), lines.length(i));
+            if (card != null) cards.add(card);
+        }
+        return new ParsedChunk(cards, endOffset);
+    }
+
+    private boolean isTrailer(byte[] line, int length) {
+        return trailerPrefix != null
+                && length >= trailerPrefix.length
+                && Arrays.equals(line, 0, trailerPrefix.length, trailerPrefix, 0, trailerPrefix.length);
+    }
+
+    private static boolean isBlank(byte[] line, int length) {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(line[i])) return false;
+        }
+        return true;
+    }
+
+    /** The lines of one chunk, back to back in a single array: line i ends where line i + 1 starts. */
+    private static final class LineChunk {
+
+        private byte[] bytes = new byte[1024];
+        private final int[] ends;
+        private int size;
+
+        LineChunk(int capacity) {
+            this.ends = new int[capacity];
+        }
+
+        void add(byte[] line, int length) {
+            int start = size == 0 ? 0 : ends[size - 1];
+            if (start + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, start + length));
+            }
+            System.arraycopy(line, 0, bytes, start, length);
+            ends[size++] = start + length;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int start(int index) {
+            return index == 0 ? 0 : ends[index - 1];
+        }
+
+        int length(int index) {
+            return ends[index] - start(index);
+        }
+    }
+}
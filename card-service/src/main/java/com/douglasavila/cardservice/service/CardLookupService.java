@@ -0,0 +1,181 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Card id by card hash, read through a bounded in-process cache. Lookups for the same cards
+ * repeat a lot, so hits skip the database entirely; the least valuable entries are evicted
+ * once {@code card.lookup.cache.maximum-size} is reached.
+ * <p>
+ * Unknown hashes are cached too, but only for {@code card.lookup.cache.negative-ttl}, and
+ * every path that inserts cards must {@link #invalidate} the hashes it stored once its
+ * transaction commits. Invalidating also drops a lookup of the same hash that is still
+ * running, so a miss read just before the insert is not left behind.
+ * <p>
+ * Concurrent lookups of a hash that is not cached share one query: the first caller puts a
+ * pending future in the cache and runs the query on its own thread, later callers wait on that
+ * future. The cache's map is striped, and no lock is held while the query runs, so a slow query
+ * never blocks lookups of other hashes.
+ * <p>
+ * Hits, misses and evictions are published as the {@code cache.*} meters tagged
+ * {@code cache=cardLookup}.
+ * <p>
+ * Before the cache, hashes are checked against the {@link CardHashFilter}: one it has never
+ * seen is answered as unknown right away, and {@link #invalidate} also adds the stored hashes
+ * to it.
+ * <p>
+ * Hashes that may be stored are then looked up in the {@link CardIdIndex}, when enabled. It
+ * answers most stored cards without touching the cache or the database; cards it does not
+ * hold yet are looked up as above, and the ids found are added to it. {@link #invalidate} wakes
+ * its reconciler, so stored cards reach it without waiting for the next round.
+ */
+@Service
+public class CardLookupService {
+
+    private final CardRepository cardRepository;
+    private final CardHashFilter cardHashFilter;
+    private final CardIdIndex cardIdIndex;
+    private final AsyncCache<String, Optional<UUID>> cardIds;
+
+    @Autowired
+    public CardLookupService(
+            CardRepository cardRepository,
+            CardHashFilter cardHashFilter,
+            CardIdIndex cardIdIndex,
+            MeterRegistry meterRegistry,
+            @Value("${card.lookup.cache.maximum-size:100000}") long maximumSize,
+            @Value("${card.lookup.cache.negative-ttl:30s}") Duration negativeTtl) {
+        this(cardRepository, cardHashFilter, cardIdIndex, meterRegistry, maximumSize, negativeTtl, Ticker.systemTicker());
+    }
+
+    CardLookupService(CardRepository cardRepository, CardHashFilter cardHashFilter, CardIdIndex cardIdIndex,
+                      MeterRegistry meterRegistry, long maximumSize, Duration negativeTtl, Ticker ticker) {
+        this.cardRepository = cardRepository;
+        this.cardHashFilter = cardHashFilter;
+        this.cardIdIndex = cardIdIndex;
+        this.cardIds = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                // A card id never changes, so only misses expire
+                .expireAfter(Expiry.<String, Optional<UUID>>creating((cardHash, cardId) ->
+                        cardId.isPresent() ? Duration.ofNanos(Long.MAX_VALUE) : negativeTtl))
+                .ticker(ticker)
+                .recordStats()
+                .buildAsync();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cardIds, "cardLookup");
+    }
+
+    /** False only when no card with this hash is stored; true does not mean one is. */
+    public boolean mightExist(String cardHash) {
+        return cardHashFilter.mightContain(cardHash);
+    }
+
+    public Optional<UUID> findCardId(String cardHash) {
+        if (!cardHashFilter.mightContain(cardHash)) return Optional.empty();
+
+        Optional<UUID> indexedCardId = cardIdIndex.find(cardHash);
+        if (indexedCardId.isPresent()) return indexedCardId;
+
+        CompletableFuture<Optional<UUID>> query = new CompletableFuture<>();
+        CompletableFuture<Optional<UUID>> cardId = cardIds.get(cardHash, (hash, executor) -> query);
+
+        // Only the caller whose future was cached runs the query, everyone else shares it
+        if (cardId == query) {
+            try {
+                Optional<UUID> storedCardId = cardRepository.findByCardHash(cardHash).map(Card::getId);
+                storedCardId.ifPresentOrElse(id -> cardIdIndex.put(cardHash, id), cardHashFilter::falsePositive);
+                query.complete(storedCardId);
+            } catch (RuntimeException e) {
+                query.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return cardId.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException failure) throw failure;
+            throw e;
+        }
+    }
+
+    /**
+     * Card ids of the given hashes, the unknown ones mapped to empty. Hashes not in the cache
+     * are resolved with a single {@code IN} query, so callers keep the collection bounded.
+     * Only the ids found are cached: a miss read here is not protected against a concurrent
+     * insert the way {@link #findCardId} is.
+     */
+    public Map<String, Optional<UUID>> findCardIds(Collection<String> cardHashes) {
+        Map<String, Optional<UUID>> found = new HashMap<>();
+        List<String> notCached = new ArrayList<>();
+
+        for (String cardHash : cardHashes) {
+            if (!cardHashFilter.mightContain(cardHash)) {
+                found.put(cardHash, Optional.empty());
+                continue;
+            }
+
+            Optional<UUID> indexedCardId = cardIdIndex.find(cardHash);
+            if (indexedCardId.isPresent()) {
+                found.put(cardHash, indexedCardId);
+                continue;
+            }
+
+            CompletableFuture<Optional<UUID>> cached = cardIds.getIfPresent(cardHash);
+
+            // A lookup still running is not waited for, the query below answers it as well
+            if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+                found.put(cardHash, cached.join());
+            } else {
+                notCached.add(cardHash);
+            }
+        }
+
+        if (!notCached.isEmpty()) {
+            for (CardIdByHash card : cardRepository.findCardIdsByCardHashIn(notCached)) {
+                Optional<UUID> cardId = Optional.of(card.cardId());
+                found.put(card.cardHash(), cardId);
+                cardIdIndex.put(card.cardHash(), card.cardId());
+                cardIds.put(card.cardHash(), CompletableFuture.completedFuture(cardId));
+            }
+            for (String cardHash : notCached) {
+                found.putIfAbsent(cardHash, Optional.empty());
+            }
+        }
+
+        return found;
+    }
+
+    public void invalidate(String cardHash) {
+        cardHashFilter.add(cardHash);
+        cardIds.synchronous().invalidate(cardHash);
+        cardIdIndex.refresh();
+    }
+
+    public void invalidate(Collection<String> cardHashes) {
+        cardHashes.forEach(cardHashFilter::add);
+        cardIds.synchronous().invalidateAll(cardHashes);
+        cardIdIndex.refresh();
+    }
+}
@@ -0,0 +1,87 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.util.CardHasher;
+import com.douglasavila.cardservice.util.CardNumberValidator;
+import tools.jackson.core.StreamWriteFeature;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.SequenceWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Streams card numbers in and one result per card number out, for the bulk endpoints. The input
+ * is a JSON array or newline-delimited JSON strings and is read {@code chunkSize} card numbers at
+ * a time; each chunk's results are written as NDJSON lines, in input order, and flushed before
+ * the next chunk is read, so memory stays flat however many card numbers the client sends.
+ */
+final class CardNumberStream {
+
+    private final ObjectReader cardNumberReader;
+    private final ObjectWriter resultWriter;
+    private final int chunkSize;
+
+    CardNumberStream(JsonMapper jsonMapper, Class<?> resultType, int chunkSize) {
+        this.cardNumberReader = jsonMapper.readerFor(String.class);
+        this.resultWriter = jsonMapper.writerFor(resultType)
+                .withRootValueSeparator("\n")
+                .without(StreamWriteFeature.AUTO_CLOSE_TARGET);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Hands every chunk of card numbers to resolver, which must return one result per card
+     * number in the same order. Malformed input fails with a
+     * {@link tools.jackson.core.JacksonException}, after the results of the chunks before it
+     * were already written.
+     */
+    void process(InputStream cardNumbers, OutputStream results,
+                 Function<List<String>, List<?>> resolver) throws IOException {
+        boolean anyResult = false;
+
+        try (MappingIterator<String> input = cardNumberReader.readValues(cardNumbers);
+             SequenceWriter output = resultWriter.writeValues(results)) {
+
+            List<String> chunk = new ArrayList<>(chunkSize);
+
+            while (input.hasNextValue()) {
+                chunk.add(input.nextValue());
+
+                if (chunk.size() >= chunkSize || !input.hasNextValue()) {
+                    output.writeAll(resolver.apply(chunk));
+                    output.flush();
+                    anyResult = true;
+                    chunk.clear();
+                }
+            }
+        }
+
+        // Every line ends with a newline, the last one included
+        if (anyResult) results.write('\n');
+        results.flush();
+    }
+
+    /**
+     * Hash of each card number of the chunk, or null where it is not valid (or fails the Luhn
+     * check, when luhn is set). Hashed in parallel.
+     */
+    static String[] hashValid(CardHasher hasher, List<String> cardNumbers, boolean luhn) {
+        String[] cardHashes = new String[cardNumbers.size()];
+
+        IntStream.range(0, cardHashes.length).parallel().forEach(i -> {
+            String cardNumber = cardNumbers.get(i);
+            if (CardNumberValidator.isValidPan(cardNumber, luhn)) {
+                cardHashes[i] = hasher.hash(cardNumber);
+            }
+        });
+        return cardHashes;
+    }
+}
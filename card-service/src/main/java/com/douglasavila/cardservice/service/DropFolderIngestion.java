@@ -0,0 +1,252 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Ingests batch files delivered to a local directory, enabled by setting
+ * {@code card.ingest.drop-folder.path}. A {@link WatchService} reports new files; each one is
+ * claimed by an atomic rename into {@code processing/} and ingested from disk with
+ * {@link CardBatchIngestService#ingestFile}, at most {@code card.ingest.drop-folder.concurrency}
+ * files at a time. Files beyond that stay unclaimed in the folder until a worker frees up.
+ * <p>
+ * Ingested files are deleted; files that fail are moved to {@code failed/}, and dropping them
+ * again resumes their FAILED batch. Files still in {@code processing/} on start were cut short
+ * by a restart and are ingested again.
+ * <p>
+ * Uploads must appear complete: hidden files and names ending in {@code .part}, {@code .tmp} or
+ * {@code .filepart} are left alone, so senders should write under such a name and rename.
+ */
+@Service
+public class DropFolderIngestion implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(DropFolderIngestion.class);
+
+    private static final long IDLE_POLL_MILLIS = 100;
+    private static final int CLAIM_ID_LENGTH = 36;
+    private static final List<String> IN_PROGRESS_SUFFIXES = List.of(".part", ".tmp", ".filepart");
+
+    private final CardBatchIngestService ingestService;
+    private final Path dropDir;
+    private final Path processingDir;
+    private final Path failedDir;
+    private final int concurrency;
+    private final Charset charset;
+    private final Semaphore slots;
+
+    private volatile boolean running;
+    private Thread watcher;
+    private ExecutorService executor;
+
+    public DropFolderIngestion(
+            CardBatchIngestService ingestService,
+            @Value("${card.ingest.drop-folder.path:}") String dropDir,
+            @Value("${card.ingest.drop-folder.concurrency:2}") int concurrency,
+            @Value("${card.ingest.drop-folder.charset:UTF-8}") Charset charset) {
+        this.ingestService = ingestService;
+        this.dropDir = dropDir.isBlank() ? null : Path.of(dropDir);
+        this.processingDir = this.dropDir == null ? null : this.dropDir.resolve("processing");
+        this.failedDir = this.dropDir == null ? null : this.dropDir.resolve("failed");
+        this.concurrency = concurrency;
+        this.charset = charset;
+        this.slots = new Semaphore(concurrency);
+    }
+
+    public boolean isEnabled() {
+        return dropDir != null;
+    }
+
+    @Override
+    public void start() {
+        if (!isEnabled() || running) return;
+
+        try {
+            Files.createDirectories(processingDir);
+            Files.createDirectories(failedDir);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create drop folder " + dropDir, e);
+        }
+
+        running = true;
+        executor = Executors.newFixedThreadPool(concurrency, Thread.ofPlatform().name("batch-drop-ingest-", 0).factory());
+        watcher = Thread.ofPlatform().name("batch-drop-folder").daemon().start(this::watch);
+    }
+
+    /** Stops claiming new files and waits for the claimed ones to be ingested. */
+    @Override
+    public void stop() {
+        if (!running) return;
+
+        running = false;
+        try {
+            watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        try (WatchService watchService = dropDir.getFileSystem().newWatchService()) {
+            // Registered before the first scan, so a file arriving in between is not missed
+            dropDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+            resumeClaimed();
+            claimAll();
+
+            while (running) {
+                WatchKey key = watchService.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key == null) continue;
+
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                    } else if (running) {
+                        claim(dropDir.resolve((Path) event.context()));
+                    }
+                }
+
+                // Events were lost, so look at the whole folder again
+                if (overflow) claimAll();
+
+                if (!key.reset()) {
+                    log.error("Drop folder {} is no longer accessible, stopped watching it", dropDir);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Could not watch drop folder {}", dropDir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void resumeClaimed() throws IOException, InterruptedException {
+        // Claimed names start with a time-ordered id, so files resume in the order they were claimed
+        for (Path claimed : list(processingDir)) {
+            // Takes a worker like a new claim, so new files wait in the folder behind resumed ones
+            if (!acquireSlot()) return;
+            executor.execute(() -> {
+                try {
+                    ingest(claimed, true);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+    }
+
+    private void claimAll() throws IOException, InterruptedException {
+        for (Path file : list(dropDir)) {
+            if (!running) return;
+            claim(file);
+        }
+    }
+
+    // Waits for a free worker before claiming, so busy workers leave new files in the folder
+    private void claim(Path file) throws InterruptedException {
+        if (!isComplete(file)) return;
+        if (!acquireSlot()) return;
+
+        Path claimed = processingDir.resolve(TimeOrderedUuid.next() + "-" + file.getFileName());
+        try {
+            Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            // Already claimed by an earlier event or scan
+            slots.release();
+            return;
+        } catch (IOException e) {
+            slots.release();
+            log.error("Could not claim batch file {}", file, e);
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                ingest(claimed, false);
+            } finally {
+                slots.release();
+            }
+        });
+    }
+
+    // Gives up once stopped, so stop() is not left joining a watcher that waits for a busy worker
+    private boolean acquireSlot() throws InterruptedException {
+        while (running) {
+            if (slots.tryAcquire(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) return true;
+        }
+        return false;
+    }
+
+    private void ingest(Path claimed, boolean restart) {
+        try {
+            if (restart) {
+                Optional<Batch> restartedBatch = ingestService.restartFile(claimed, charset);
+                if (restartedBatch.isPresent()) {
+                    ingestService.ingestStartedFile(claimed, charset, restartedBatch.get());
+                }
+            } else {
+                ingestService.ingestFile(claimed, charset);
+            }
+
+            Files.deleteIfExists(claimed);
+        } catch (IOException | RuntimeException e) {
+            log.error("Batch file {} could not be ingested, moving it to {}", claimed.getFileName(), failedDir, e);
+            moveToFailed(claimed);
+        }
+    }
+
+    private void moveToFailed(Path claimed) {
+        // Back to the name it was dropped with, without the claim id
+        String droppedName = claimed.getFileName().toString().substring(CLAIM_ID_LENGTH + 1);
+
+        try {
+            Files.move(claimed, failedDir.resolve(droppedName), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Could not move batch file {} to {}", claimed, failedDir, e);
+        }
+    }
+
+    private static boolean isComplete(Path file) {
+        String name = file.getFileName().toString();
+
+        return Files.isRegularFile(file)
+                && !name.startsWith(".")
+                && IN_PROGRESS_SUFFIXES.stream().noneMatch(name::endsWith);
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile).sorted().toList();
+        }
+    }
+}
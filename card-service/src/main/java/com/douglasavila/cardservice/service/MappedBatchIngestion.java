@@ -0,0 +1,271 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.util.BatchParser;
+import com.douglasavila.cardservice.util.MappedBatchFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Parallel ingestion of the card lines of a {@link MappedBatchFile}. The body is split in
+ * halves on line boundaries until each range is small enough, and every range is mapped,
+ * parsed and committed by a fork-join task:
+ * <ol>
+ *     <li>{@link #findBodyEnd} finds the trailer, so no range reads past it;</li>
+ *     <li>{@link #ingest} parses the ranges before it and hands their cards, in chunks of
+ *     {@code chunkSize}, to the committer.</li>
+ * </ol>
+ * Ranges commit independently and in no particular order, so there is no single checkpoint
+ * offset; the committer only learns how many cards each chunk holds.
+ */
+class MappedBatchIngestion {
+
+    private static final long MIN_RANGE_SIZE = 1L << 20;
+
+    private final MappedBatchFile file;
+    private final BatchParser batchParser;
+    private final byte[] trailerPrefix;
+    private final int chunkSize;
+    private final int parallelism;
+    private final Consumer<List<Card>> committer;
+
+    private final AtomicInteger committedRecords = new AtomicInteger();
+    private volatile boolean aborted;
+
+    MappedBatchIngestion(MappedBatchFile file, BatchParser batchParser, Charset charset, String batchCode,
+                         int chunkSize, int parallelism, Consumer<List<Card>> committer) {
+        this.file = file;
+        this.batchParser = batchParser;
+        // Same rule as the streamed ingestion: the trailer starts with the 8-character batch code
+        this.trailerPrefix = batchCode.length() == 8 ? batchCode.getBytes(charset) : null;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.committer = committer;
+    }
+
+    /** Offset of the trailer line, or the file size when the file has none. */
+    long findBodyEnd(ForkJoinPool pool, long bodyStart) throws IOException {
+        if (trailerPrefix == null) return file.size();
+
+        long trailerOffset = invoke(pool, new TrailerSearch(bodyStart, file.size(), rangeSize(bodyStart, file.size())));
+        return trailerOffset < 0 ? file.size() : trailerOffset;
+    }
+
+    /**
+     * Parses and commits every card line in [bodyStart, bodyEnd) and returns how many cards were
+     * committed. If any range fails the others stop at their next chunk and the failure is
+     * rethrown; once the pool is closed, {@link #committedRecords()} tells how many made it to
+     * the database.
+     */
+    int ingest(ForkJoinPool pool, long bodyStart, long bodyEnd) throws IOException {
+        return invoke(pool, new RangeIngest(bodyStart, bodyEnd, rangeSize(bodyStart, bodyEnd)));
+    }
+
+    int committedRecords() {
+        return committedRecords.get();
+    }
+
+    // A few ranges per worker evens out the load, ranges under 1MB are not worth a task
+    private long rangeSize(long start, long end) {
+        long size = (end - start) / (parallelism * 4L);
+        return Math.clamp(size, MIN_RANGE_SIZE, MappedBatchFile.MAX_RANGE_SIZE);
+    }
+
+    private static <T> T invoke(ForkJoinPool pool, RecursiveTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (RuntimeException e) {
+            // Failures from another worker come back as a copy wrapping the original
+            RuntimeException failure = e.getCause() != null && e.getCause().getClass() == e.getClass()
+                    ? (RuntimeException) e.getCause() : e;
+
+            if (failure instanceof UncheckedIOException io) throw io.getCause();
+            throw failure;
+        }
+    }
+
+    private abstract class RangeTask<T> extends RecursiveTask<T> {
+
+        final long start;
+        final long end;
+        final long maxRangeSize;
+
+        RangeTask(long start, long end, long maxRangeSize) {
+            this.start = start;
+            this.end = end;
+            this.maxRangeSize = maxRangeSize;
+        }
+
+        abstract RangeTask<T> subRange(long start, long end);
+
+        abstract T combine(T left, T right);
+
+        /** Result for an empty range. */
+        abstract T none();
+
+        abstract T computeRange(MappedByteBuffer range);
+
+        @Override
+        protected T compute() {
+            try {
+                if (end - start > maxRangeSize) {
+                    long middle = file.lineStartAtOrAfter(start + (end - start) / 2);
+
+                    if (middle > start && middle < end) {
+                        RangeTask<T> left = subRange(start, middle);
+                        left.fork();
+                        T right = subRange(middle, end).compute();
+                        return combine(left.join(), right);
+                    }
+                }
+                return start < end ? computeRange(file.map(start, end)) : none();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private class TrailerSearch extends RangeTask<Long> {
+
+        TrailerSearch(long start, long end, long maxRangeSize) {
+            super(start, end, maxRangeSize);
+        }
+
+        @Override
+        RangeTask<Long> subRange(long start, long end) {
+            return new TrailerSearch(start, end, maxRangeSize);
+        }
+
+        // The first trailer in the file wins
+        @Override
+        Long combine(Long left, Long right) {
+            return left >= 0 ? left : right;
+        }
+
+        @Override
+        Long none() {
+            return -1L;
+        }
+
+        @Override
+        Long computeRange(MappedByteBuffer range) {
+            int lineStart = 0;
+            int limit = range.limit();
+
+            while (lineStart < limit) {
+                if (startsWithTrailer(range, lineStart, limit)) {
+                    return start + lineStart;
+                }
+                lineStart = lineEnd(range, lineStart, limit) + 1;
+            }
+            return -1L;
+        }
+
+        private boolean startsWithTrailer(MappedByteBuffer range, int lineStart, int limit) {
+            if (limit - lineStart < trailerPrefix.length) return false;
+
+            for (int i = 0; i < trailerPrefix.length; i++) {
+                if (range.get(lineStart + i) != trailerPrefix[i]) return false;
+            }
+            return true;
+        }
+    }
+
+    private class RangeIngest extends RangeTask<Integer> {
+
+        RangeIngest(long start, long end, long maxRangeSize) {
+            super(start, end, maxRangeSize);
+        }
+
+        @Override
+        RangeTask<Integer> subRange(long start, long end) {
+            return new RangeIngest(start, end, maxRangeSize);
+        }
+
+        @Override
+        Integer combine(Integer left, Integer right) {
+            return left + right;
+        }
+
+        @Override
+        Integer none() {
+            return 0;
+        }
+
+        @Override
+        Integer computeRange(MappedByteBuffer range) {
+            List<Card> chunk = new ArrayList<>(chunkSize);
+            byte[] line = new byte[128];
+            int lineStart = 0;
+            int limit = range.limit();
+            int committed = 0;
+
+            try {
+                while (lineStart < limit && !aborted) {
+                    int lineEnd = lineEnd(range, lineStart, limit);
+                    int length = lineEnd - lineStart;
+
+                    // Drop the '\r' of "\r\n" terminated files
+                    if (length > 0 && range.get(lineStart + length - 1) == '\r') {
+                        length--;
+                    }
+
+                    if (!isBlank(range, lineStart, length)) {
+                        if (length > line.length) {
+                            line = new byte[Math.max(length, line.length * 2)];
+                        }
+                        range.get(lineStart, line, 0, length);
+
+                        Card card = batchParser.parseCardLine(line, 0, length);
+                        if (card != null) chunk.add(card);
+
+                        if (chunk.size() >= chunkSize) {
+                            committed += commit(chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                        }
+                    }
+                    lineStart = lineEnd + 1;
+                }
+
+                if (!chunk.isEmpty() && !aborted) {
+                    committed += commit(chunk);
+                }
+                return committed;
+            } catch (RuntimeException e) {
+                aborted = true;
+                throw e;
+            }
+        }
+
+        private int commit(List<Card> chunk) {
+            committer.accept(chunk);
+            committedRecords.addAndGet(chunk.size());
+            return chunk.size();
+        }
+
+        private static boolean isBlank(MappedByteBuffer range, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (!Character.isWhitespace(range.get(i))) return false;
+            }
+            return true;
+        }
+    }
+
+    /** Index of the '\n' ending the line that starts at lineStart, or limit for the last line. */
+    private static int lineEnd(MappedByteBuffer range, int lineStart, int limit) {
+        int position = lineStart;
+        while (position < limit && range.get(position) != '\n') {
+            position++;
+        }
+        return position;
+    }
+}
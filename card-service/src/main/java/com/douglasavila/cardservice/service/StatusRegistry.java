@@ -0,0 +1,84 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.BatchStatus;
+import com.douglasavila.cardservice.entity.CardStatus;
+import com.douglasavila.cardservice.repository.BatchStatusRepository;
+import com.douglasavila.cardservice.repository.CardStatusRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Card and batch statuses, loaded once at startup. The status rows are seeded by data.sql and
+ * never change, so looking them up by name for every card or upload was wasted round trips.
+ * <p>
+ * Inside a transaction or web request the returned status is a reference from the current
+ * persistence context ({@link EntityManager#getReference}), which issues no SQL and can be
+ * linked to new cards and batches as is. Anywhere else it is the instance loaded at startup,
+ * detached, and must not be modified.
+ */
+@Service
+public class StatusRegistry implements SmartInitializingSingleton {
+
+    private final CardStatusRepository cardStatusRepository;
+    private final BatchStatusRepository batchStatusRepository;
+    private final EntityManagerFactory entityManagerFactory;
+
+    private Map<CardStatus.Values, CardStatus> cardStatuses = Map.of();
+    private Map<BatchStatus.Values, BatchStatus> batchStatuses = Map.of();
+
+    public StatusRegistry(CardStatusRepository cardStatusRepository,
+                          BatchStatusRepository batchStatusRepository,
+                          EntityManagerFactory entityManagerFactory) {
+        this.cardStatusRepository = cardStatusRepository;
+        this.batchStatusRepository = batchStatusRepository;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        Map<CardStatus.Values, CardStatus> loadedCardStatuses = new EnumMap<>(CardStatus.Values.class);
+        for (CardStatus.Values value : CardStatus.Values.values()) {
+            CardStatus status = cardStatusRepository.findByCardStatusName(value.name());
+            if (status == null) {
+                throw new IllegalStateException("Card status " + value + " is missing, check data.sql");
+            }
+            loadedCardStatuses.put(value, status);
+        }
+
+        Map<BatchStatus.Values, BatchStatus> loadedBatchStatuses = new EnumMap<>(BatchStatus.Values.class);
+        for (BatchStatus.Values value : BatchStatus.Values.values()) {
+            BatchStatus status = batchStatusRepository.findByBatchStatusName(value.name());
+            if (status == null) {
+                throw new IllegalStateException("Batch status " + value + " is missing, check data.sql");
+            }
+            loadedBatchStatuses.put(value, status);
+        }
+
+        this.cardStatuses = Collections.unmodifiableMap(loadedCardStatuses);
+        this.batchStatuses = Collections.unmodifiableMap(loadedBatchStatuses);
+    }
+
+    public CardStatus cardStatus(CardStatus.Values value) {
+        CardStatus status = cardStatuses.get(value);
+        EntityManager em = currentEntityManager();
+        return em != null ? em.getReference(CardStatus.class, status.getCardStatusId()) : status;
+    }
+
+    public BatchStatus batchStatus(BatchStatus.Values value) {
+        BatchStatus status = batchStatuses.get(value);
+        EntityManager em = currentEntityManager();
+        return em != null ? em.getReference(BatchStatus.class, status.getBatchStatusId()) : status;
+    }
+
+    // Bound by a transaction or by open-in-view; null when the caller has neither
+    private EntityManager currentEntityManager() {
+        return EntityManagerFactoryUtils.getTransactionalEntityManager(entityManagerFactory);
+    }
+}
@@ -0,0 +1,138 @@
+package com.douglasavila.cardservice.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Line reader for batch files that keeps track of the exact byte offset of what was
+ * consumed, so ingestion can record a checkpoint and later skip straight back to it.
+ * Lines end with '\n' or "\r\n"; the terminator is not part of the returned line.
+ * <p>
+ * {@link #nextLine()} leaves the raw bytes of the line in a buffer the reader reuses, for
+ * callers that parse bytes and have no use for a decoded String.
+ */
+public class BatchLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final Charset charset;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[128];
+    private int lineLength;
+
+    private long offset;
+
+    public BatchLineReader(InputStream in, Charset charset) {
+        this.in = in;
+        this.charset = charset;
+    }
+
+    /** Returns the next line, or null at the end of the stream. */
+    public String readLine() throws IOException {
+        return nextLine() ? new String(line, 0, lineLength, charset) : null;
+    }
+
+    /**
+     * Reads the next line into {@link #lineBytes()}, without decoding it. False at the end of
+     * the stream.
+     */
+    public boolean nextLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            readAny = true;
+
+            int start = position;
+            while (position < limit && buffer[position] != '\n') {
+                position++;
+            }
+            append(start, position - start);
+
+            if (position < limit) {
+                // Consume the '\n' terminator
+                position++;
+                offset++;
+                break;
+            }
+        }
+
+        if (!readAny) return false;
+
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        return true;
+    }
+
+    /** Bytes of the line {@link #nextLine()} read, from index 0; overwritten by the next read. */
+    public byte[] lineBytes() {
+        return line;
+    }
+
+    /** Length of the line {@link #nextLine()} read. */
+    public int lineLength() {
+        return lineLength;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /** Bytes consumed so far, up to and including the terminator of the last line read. */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Moves forward to the given absolute offset without decoding what is skipped.
+     *
+     * @throws java.io.EOFException if the stream ends before the offset is reached
+     */
+    public void skipTo(long target) throws IOException {
+        if (target < offset) {
+            throw new IllegalArgumentException("Cannot skip backwards to offset " + target);
+        }
+
+        long remaining = target - offset;
+        int buffered = (int) Math.min(remaining, limit - position);
+        position += buffered;
+        remaining -= buffered;
+
+        in.skipNBytes(remaining);
+        offset = target;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer);
+        if (read <= 0) return false;
+
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    private void append(int start, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+        offset += length;
+    }
+}
@@ -0,0 +1,224 @@
+package com.douglasavila.cardservice.util;
+
+import com.douglasavila.cardservice.entity.Card;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Card brand and issuer by BIN, the leading digits of a card number. Immutable, so one index
+ * can be read by any number of threads while a newer one is being built.
+ * <p>
+ * Every BIN is widened to 8 digits: a 6-digit BIN {@code 411111} covers {@code 41111100} to
+ * {@code 41111199}. Ranges may nest or overlap, and the narrowest one containing a card number
+ * wins, so a table can list a brand-wide range and the issuers inside it. On load they are
+ * flattened into disjoint ranges kept in two sorted {@code long[]} arrays, and a lookup is one
+ * binary search with no allocation; the {@link Bin} it answers is shared by all its ranges.
+ * <p>
+ * The table file is UTF-8 text, one range per line, either {@code bin,brand,issuer} or
+ * {@code firstBin,lastBin,brand,issuer}, with BINs of 6 to 8 digits. Blank lines and lines
+ * starting with {@code #} are skipped; the issuer may be left empty.
+ */
+public final class BinRangeIndex {
+
+    /** Classification of a BIN range. */
+    public record Bin(String brand, String issuer) {
+    }
+
+    public static final BinRangeIndex EMPTY = new BinRangeIndex(new long[0], new long[0], new Bin[0]);
+
+    private static final int BIN_DIGITS = 8;
+    private static final int MIN_BIN_DIGITS = 6;
+
+    private final long[] firsts;
+    private final long[] lasts;
+    private final Bin[] bins;
+
+    private BinRangeIndex(long[] firsts, long[] lasts, Bin[] bins) {
+        this.firsts = firsts;
+        this.lasts = lasts;
+        this.bins = bins;
+    }
+
+    /**
+     * @throws IllegalArgumentException naming the line, when a line is not a valid range
+     */
+    public static BinRangeIndex load(Path table) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        Map<Bin, Bin> distinctBins = new HashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(table, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.strip();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+                try {
+                    ranges.add(parseRange(trimmed, ranges.size(), distinctBins));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid BIN table line " + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+
+        return flatten(ranges);
+    }
+
+    /** Classification of a card number given as ASCII digits, null when no range holds it. */
+    public Bin find(byte[] pan, int offset, int length) {
+        if (length < BIN_DIGITS) return null;
+
+        long bin = 0;
+        for (int i = offset; i < offset + BIN_DIGITS; i++) {
+            bin = bin * 10 + (pan[i] - '0');
+        }
+        return find(bin);
+    }
+
+    /** Like {@link #find(byte[], int, int)} for a card number that may contain spaces and dashes. */
+    public Bin find(String cardNumber) {
+        long bin = 0;
+        int digits = 0;
+
+        for (int i = 0; i < cardNumber.length() && digits < BIN_DIGITS; i++) {
+            char c = cardNumber.charAt(i);
+            if (c == ' ' || c == '-') continue;
+
+            bin = bin * 10 + (c - '0');
+            digits++;
+        }
+        return digits == BIN_DIGITS ? find(bin) : null;
+    }
+
+    /** Sets the card's brand and issuer from its number, left null when no range holds it. */
+    public void classify(Card card, byte[] pan, int offset, int length) {
+        classify(card, find(pan, offset, length));
+    }
+
+    /** Like {@link #classify(Card, byte[], int, int)} for a card number that may contain spaces and dashes. */
+    public void classify(Card card, String cardNumber) {
+        classify(card, find(cardNumber));
+    }
+
+    /** Number of disjoint ranges after flattening. */
+    public int size() {
+        return firsts.length;
+    }
+
+    private static void classify(Card card, Bin bin) {
+        if (bin == null) return;
+
+        card.setCardBrand(bin.brand());
+        card.setCardIssuer(bin.issuer());
+    }
+
+    private Bin find(long bin) {
+        // Last range starting at or before the BIN
+        int i = Arrays.binarySearch(firsts, bin);
+        if (i < 0) i = -i - 2;
+
+        return i >= 0 && bin <= lasts[i] ? bins[i] : null;
+    }
+
+    private record Range(long first, long last, Bin bin, int order) {
+
+        long width() {
+            return last - first;
+        }
+    }
+
+    private static Range parseRange(String line, int order, Map<Bin, Bin> distinctBins) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 3 && fields.length != 4) {
+            throw new IllegalArgumentException("expected bin,brand,issuer or firstBin,lastBin,brand,issuer");
+        }
+
+        boolean single = fields.length == 3;
+        String firstBin = fields[0].strip();
+        String lastBin = single ? firstBin : fields[1].strip();
+        String brand = fields[single ? 1 : 2].strip();
+        String issuer = fields[single ? 2 : 3].strip();
+
+        if (brand.isEmpty()) throw new IllegalArgumentException("brand is missing");
+
+        long first = widen(firstBin, '0');
+        long last = widen(lastBin, '9');
+        if (first > last) throw new IllegalArgumentException("first BIN is after last BIN");
+
+        Bin bin = distinctBins.computeIfAbsent(new Bin(brand, issuer.isEmpty() ? null : issuer), b -> b);
+        return new Range(first, last, bin, order);
+    }
+
+    // A shorter BIN stands for every 8-digit BIN it prefixes
+    private static long widen(String bin, char padding) {
+        if (bin.length() < MIN_BIN_DIGITS || bin.length() > BIN_DIGITS || !bin.chars().allMatch(Character::isDigit)) {
+            throw new IllegalArgumentException("BIN must have 6 to 8 digits: " + bin);
+        }
+        return Long.parseLong(bin + String.valueOf(padding).repeat(BIN_DIGITS - bin.length()));
+    }
+
+    /**
+     * Sweeps the range boundaries in order, keeping the ranges open at each point in a heap with
+     * the narrowest on top (the later line on a tie); each stretch between two boundaries goes to
+     * that range, and neighbouring stretches of the same Bin are merged.
+     */
+    private static BinRangeIndex flatten(List<Range> ranges) {
+        long[] boundaries = new long[ranges.size() * 2];
+        for (int i = 0; i < ranges.size(); i++) {
+            boundaries[2 * i] = ranges.get(i).first();
+            boundaries[2 * i + 1] = ranges.get(i).last() + 1;
+        }
+        Arrays.sort(boundaries);
+
+        List<Range> byFirst = new ArrayList<>(ranges);
+        byFirst.sort(Comparator.comparingLong(Range::first));
+        PriorityQueue<Range> open = new PriorityQueue<>(
+                Comparator.comparingLong(Range::width).thenComparing(Range::order, Comparator.reverseOrder()));
+
+        long[] firsts = new long[boundaries.length];
+        long[] lasts = new long[boundaries.length];
+        Bin[] bins = new Bin[boundaries.length];
+        int size = 0;
+        int next = 0;
+
+        for (int b = 0; b < boundaries.length - 1; b++) {
+            long from = boundaries[b];
+            long to = boundaries[b + 1] - 1;
+            if (from > to) continue;
+
+            while (next < byFirst.size() && byFirst.get(next).first() <= from) {
+                open.add(byFirst.get(next++));
+            }
+            // Ranges that ended before this stretch are dropped once they reach the top
+            while (!open.isEmpty() && open.peek().last() < from) {
+                open.poll();
+            }
+            if (open.isEmpty()) continue;
+
+            Bin bin = open.peek().bin();
+            if (size > 0 && bins[size - 1] == bin && lasts[size - 1] == from - 1) {
+                lasts[size - 1] = to;
+            } else {
+                firsts[size] = from;
+                lasts[size] = to;
+                bins[size] = bin;
+                size++;
+            }
+        }
+
+        return new BinRangeIndex(Arrays.copyOf(firsts, size), Arrays.copyOf(lasts, size), Arrays.copyOf(bins, size));
+    }
+}
@@ -0,0 +1,170 @@
+package com.douglasavila.cardservice.util;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.Card;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * {@link BatchParser} for ASCII batch files that works on the raw bytes of each line. Fields are
+ * taken by offset and the card number digits go straight to {@link CardHasher}, so a card line
+ * only allocates the Card itself and its String fields.
+ * <p>
+ * Card numbers with spaces or dashes between the digits are rare enough to take the slower
+ * String path, which keeps their hashes identical to {@link StringBatchParser}. The card status
+ * is left for the caller to set.
+ */
+public class ByteBatchParser implements BatchParser {
+
+    private static final Logger log = LoggerFactory.getLogger(ByteBatchParser.class);
+
+    private static final int LINE_LENGTH = 51;
+
+    private static final int SEQUENCE_START = 1;
+    private static final int SEQUENCE_END = 7;
+    private static final int CARD_NUMBER_START = 7;
+    private static final int CARD_NUMBER_END = 26;
+
+    private final CardHasher hasher;
+    private final boolean luhn;
+    private final Supplier<BinRangeIndex> bins;
+
+    public ByteBatchParser(CardHasher hasher) {
+        this(hasher, false, () -> BinRangeIndex.EMPTY);
+    }
+
+    /**
+     * @param luhn whether card numbers must also pass the Luhn check
+     * @param bins the BIN table in use, asked once per card so a reloaded table applies at once
+     */
+    public ByteBatchParser(CardHasher hasher, boolean luhn, Supplier<BinRangeIndex> bins) {
+        this.hasher = hasher;
+        this.luhn = luhn;
+        this.bins = bins;
+    }
+
+    @Override
+    public Batch parseHeaderLine(String line) {
+
+        if (line == null || line.length() < LINE_LENGTH) {
+            throw new IllegalArgumentException("Invalid header line.");
+        }
+
+        String fileName = line.substring(0, 29).trim();
+        String batchCode = line.substring(37, 45).trim();
+        int recordCount = Integer.parseInt(line.substring(45, 51).trim());
+
+        int year = digits(line, 29, 33);
+        int month = digits(line, 33, 35);
+        int day = digits(line, 35, 37);
+
+        if (year < 0 || month < 0 || day < 0) {
+            throw new DateTimeParseException("Invalid file date.", line.substring(29, 37), 0);
+        }
+
+        return new Batch(
+                fileName,
+                LocalDate.of(year, month, day),
+                batchCode,
+                recordCount
+        );
+    }
+
+    @Override
+    public Optional<Card> parseCardLines(String line) {
+        if (line == null) {
+            log.debug("Invalid card line: missing");
+            return Optional.empty();
+        }
+
+        byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+        return Optional.ofNullable(parseCardLine(bytes, 0, bytes.length));
+    }
+
+    @Override
+    public Card parseCardLine(byte[] line, int offset, int length) {
+
+        if (length < LINE_LENGTH) {
+            log.debug("Invalid card line: {} characters, expected {}", length, LINE_LENGTH);
+            return null;
+        }
+
+        int cardNumberStart = skipLeadingBlanks(line, offset + CARD_NUMBER_START, offset + CARD_NUMBER_END);
+        int cardNumberEnd = skipTrailingBlanks(line, cardNumberStart, offset + CARD_NUMBER_END);
+        int cardNumberLength = cardNumberEnd - cardNumberStart;
+
+        String cardHash;
+        String cardNumber = null;
+        byte[] digest = null;
+
+        if (CardNumberValidator.isValidPan(line, cardNumberStart, cardNumberLength, luhn)) {
+            digest = new byte[CardHasher.HASH_LENGTH];
+            hasher.hash(line, cardNumberStart, cardNumberLength, digest, 0);
+            cardHash = CardHasher.toHex(digest);
+        } else {
+            // Separators between the digits, or not a card number at all
+            cardNumber = new String(line, cardNumberStart, cardNumberLength, StandardCharsets.ISO_8859_1);
+
+            if (!CardNumberValidator.isValidPan(cardNumber, luhn)) {
+                log.debug("Invalid card number in record {}", sequenceNumber(line, offset));
+                return null;
+            }
+            cardHash = hasher.hash(cardNumber);
+        }
+
+        int last4Start = Math.max(cardNumberStart, cardNumberEnd - 4);
+        Card card = new Card(
+                cardHash,
+                new String(line, last4Start, cardNumberEnd - last4Start, StandardCharsets.ISO_8859_1),
+                null);
+        card.setCardHashDigest(digest);
+
+        if (cardNumber == null) {
+            bins.get().classify(card, line, cardNumberStart, cardNumberLength);
+        } else {
+            bins.get().classify(card, cardNumber);
+        }
+
+        card.setBatchSequenceNumber(sequenceNumber(line, offset));
+
+        return card;
+    }
+
+    private static String sequenceNumber(byte[] line, int offset) {
+        int sequenceStart = skipLeadingBlanks(line, offset + SEQUENCE_START, offset + SEQUENCE_END);
+        int sequenceEnd = skipTrailingBlanks(line, sequenceStart, offset + SEQUENCE_END);
+        return new String(line, sequenceStart, sequenceEnd - sequenceStart, StandardCharsets.ISO_8859_1);
+    }
+
+    // Same characters String.trim() drops
+    private static int skipLeadingBlanks(byte[] line, int start, int end) {
+        while (start < end && (line[start] & 0xff) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipTrailingBlanks(byte[] line, int start, int end) {
+        while (end > start && (line[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    // Value of the decimal digits in [start, end), or -1 if any of them is not a digit
+    private static int digits(String line, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
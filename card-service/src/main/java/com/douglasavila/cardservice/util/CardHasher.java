@@ -1,29 +1,70 @@
 package com.douglasavila.cardservice.util;
 
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/**
+ * Salted SHA-256 of card numbers: {@code sha256(cardNumber.trim() + salt)} over UTF-8, as
+ * lowercase hex or as the raw 32 bytes.
+ * <p>
+ * Each thread reuses its own MessageDigest and the salt is encoded once, so hashing a card
+ * number given as bytes into a caller-supplied array does not allocate.
+ */
 public class CardHasher {
 
-    private final String salt;
+    public static final int HASH_LENGTH = 32;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    });
+
+    private final byte[] salt;
 
     public CardHasher(String salt) {
-        this.salt = salt;
+        this.salt = salt.getBytes(StandardCharsets.UTF_8);
     }
 
     public String hash(String cardNumber) {
+        byte[] input = cardNumber.trim().getBytes(StandardCharsets.UTF_8);
+        return hash(input, 0, input.length);
+    }
+
+    /**
+     * Same hash as {@link #hash(String)} for a card number given as ASCII digits in
+     * cardNumber[offset, offset + length), already trimmed.
+     */
+    public String hash(byte[] cardNumber, int offset, int length) {
+        byte[] hash = new byte[HASH_LENGTH];
+        hash(cardNumber, offset, length, hash, 0);
+        return toHex(hash);
+    }
+
+    /**
+     * Writes the 32 hash bytes of the card number in cardNumber[offset, offset + length) to
+     * out[outOffset, outOffset + 32). The hex form of these bytes is {@link #hash(String)}.
+     */
+    public void hash(byte[] cardNumber, int offset, int length, byte[] out, int outOffset) {
+        // Checked before updating, so a bad call cannot leave input behind in this thread's digest
+        if (outOffset < 0 || out.length - outOffset < HASH_LENGTH) {
+            throw new IllegalArgumentException("Output buffer too small for a SHA-256 hash");
+        }
+
+        MessageDigest digest = SHA_256.get();
+        digest.update(cardNumber, offset, length);
+        digest.update(salt);
+
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            String input = cardNumber.trim() + salt;
-            byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hashBytes) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
+            digest.digest(out, outOffset, HASH_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalStateException("SHA-256 digest failed", e);
         }
     }
 
@@ -33,4 +74,14 @@ public class CardHasher {
         }
         return cardNumber.substring(cardNumber.length() - 4);
     }
+
+    /** Lowercase hex of the given bytes, two characters per byte. */
+    public static String toHex(byte[] bytes) {
+        byte[] hex = new byte[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(hex, StandardCharsets.ISO_8859_1);
+    }
 }
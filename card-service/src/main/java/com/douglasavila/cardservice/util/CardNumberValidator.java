@@ -1,7 +1,22 @@
 package com.douglasavila.cardservice.util;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 public final class CardNumberValidator {
 
+    private static final int MIN_LENGTH = 13;
+    private static final int MAX_LENGTH = 19;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long EACH_BYTE = 0x0101_0101_0101_0101L;
+    private static final long HIGH_NIBBLES = 0xF0F0_F0F0_F0F0_F0F0L;
+    private static final long LOW_NIBBLES = 0x0F0F_0F0F_0F0F_0F0FL;
+
+    // Luhn value of a digit in a doubled position: 2d, minus 9 when that is two digits
+    private static final int[] DOUBLED = {0, 2, 4, 6, 8, 1, 3, 5, 7, 9};
+
     private CardNumberValidator() {}
 
     /**
@@ -12,42 +27,106 @@ public final class CardNumberValidator {
      * - basic anti-bogus checks (all same digit)
      */
     public static boolean isValidPan(String input) {
+        return isValidPan(input, false);
+    }
+
+    /**
+     * Same as {@link #isValidPan(String)}, and when luhn is set the last digit must also be the
+     * Luhn check digit of the others. Checked in a single pass that skips the separators in
+     * place instead of building the normalized String.
+     */
+    public static boolean isValidPan(String input, boolean luhn) {
         if (input == null) return false;
 
-        String pan = normalize(input);
-        int len = pan.length();
+        int length = 0;
+        char first = 0;
+        boolean allSame = true;
+        // Luhn sums with the digits at even and at odd indexes doubled; the length picks one at the end
+        int evenDoubledSum = 0;
+        int oddDoubledSum = 0;
 
-        // Length rule (ISO/industry): 13..19 digits
-        if (len < 13 || len > 19) return false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            // Tolerate spaces and '-' in user input
+            if (c == ' ' || c == '-') continue;
+
+            if (c < '0' || c > '9' || length == MAX_LENGTH) return false;
 
-        // Digits only
-        if (!allDigits(pan)) return false;
+            int digit = c - '0';
+            if (length == 0) first = c;
+            else if (c != first) allSame = false;
+
+            if ((length & 1) == 0) {
+                evenDoubledSum += DOUBLED[digit];
+                oddDoubledSum += digit;
+            } else {
+                evenDoubledSum += digit;
+                oddDoubledSum += DOUBLED[digit];
+            }
+            length++;
+        }
+
+        // Length rule (ISO/industry): 13..19 digits
+        if (length < MIN_LENGTH) return false;
 
         // Anti-bogus: reject all same digit (e.g., 0000..., 1111...)
-        return !allSameDigit(pan);
+        if (allSame) return false;
 
-        // Luhn validation skipped to facilitate testing with non-real valid card numbers
+        // The check digit is never doubled, so the digits doubled are those of the other parity
+        int luhnSum = (length & 1) == 0 ? evenDoubledSum : oddDoubledSum;
+        return !luhn || luhnSum % 10 == 0;
     }
 
-    /** Keep only digits; tolerate spaces and '-' in user input. */
-    private static String normalize(String s) {
-        // Remove spaces and dashes; you can expand this to remove other separators if needed.
-        return s.replace(" ", "").replace("-", "");
+    /**
+     * Same rules as {@link #isValidPan(String)} for a card number given as ASCII bytes in
+     * pan[offset, offset + length), already trimmed and without separators.
+     */
+    public static boolean isValidPan(byte[] pan, int offset, int length) {
+        return isValidPan(pan, offset, length, false);
     }
 
-    private static boolean allDigits(String s) {
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            if (c < '0' || c > '9') return false;
-        }
-        return true;
+    /**
+     * Same rules as {@link #isValidPan(String, boolean)} for a card number given as ASCII bytes
+     * in pan[offset, offset + length), already trimmed and without separators.
+     * <p>
+     * Digits and repeats are checked eight bytes at a time: a card number of 13 to 19 digits is
+     * covered by two or three overlapping longs read straight from the array, each tested with a
+     * few bitwise operations instead of a branch per byte.
+     */
+    public static boolean isValidPan(byte[] pan, int offset, int length, boolean luhn) {
+        // Length rule (ISO/industry): 13..19 digits
+        if (length < MIN_LENGTH || length > MAX_LENGTH) return false;
+
+        long head = (long) LONG_VIEW.get(pan, offset);
+        long tail = (long) LONG_VIEW.get(pan, offset + length - Long.BYTES);
+        long middle = length > 2 * Long.BYTES ? (long) LONG_VIEW.get(pan, offset + Long.BYTES) : head;
+
+        if (!allDigits(head) || !allDigits(middle) || !allDigits(tail)) return false;
+
+        // Anti-bogus: reject all same digit (e.g., 0000..., 1111...)
+        long firstRepeated = (pan[offset] & 0xFFL) * EACH_BYTE;
+        if (head == firstRepeated && middle == firstRepeated && tail == firstRepeated) return false;
+
+        return !luhn || luhnSum(pan, offset, length) % 10 == 0;
     }
 
-    private static boolean allSameDigit(String s) {
-        char first = s.charAt(0);
-        for (int i = 1; i < s.length(); i++) {
-            if (s.charAt(i) != first) return false;
+    // Eight ASCII digits: every high nibble is 3 and no low nibble goes past 9 when 6 is added
+    private static boolean allDigits(long word) {
+        return (word & HIGH_NIBBLES) == 0x3030_3030_3030_3030L
+                && (((word & LOW_NIBBLES) + 0x0606_0606_0606_0606L) & HIGH_NIBBLES) == 0;
+    }
+
+    // Every second digit from the check digit leftwards is doubled
+    private static int luhnSum(byte[] pan, int offset, int length) {
+        int sum = 0;
+        int last = offset + length - 1;
+
+        for (int i = last; i >= offset; i -= 2) {
+            sum += pan[i] - '0';
+        }
+        for (int i = last - 1; i >= offset; i -= 2) {
+            sum += DOUBLED[pan[i] - '0'];
         }
-        return true;
+        return sum;
     }
 }
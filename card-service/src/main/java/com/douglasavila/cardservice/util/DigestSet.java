@@ -0,0 +1,134 @@
+package com.douglasavila.cardservice.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.HexFormat;
+
+/**
+ * Set of card hashes held as raw SHA-256 digests in one flat {@code long[]}, four longs per
+ * slot, with open addressing and linear probing. Each distinct hash costs 32 bytes at up to
+ * 75% load and no object at all, so a batch's worth of hashes stays compact and cheap for the
+ * GC. Digests are already uniform, so their first 8 bytes pick the slot as they are.
+ * <p>
+ * The set starts with at most 65,536 slots (2 MB), whatever size it is told to expect, and
+ * grows as hashes are actually added.
+ * <p>
+ * Not thread-safe.
+ */
+public final class DigestSet {
+
+    private static final int LONGS_PER_DIGEST = CardHasher.HASH_LENGTH / Long.BYTES;
+    private static final double MAX_LOAD = 0.75;
+    private static final int MIN_SLOTS = 16;
+    private static final int MAX_INITIAL_SLOTS = 1 << 16;
+    private static final int MAX_SLOTS = 1 << 28;
+
+    // Big-endian, so digest bytes give the same longs as their hex form
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private long[] slots;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // The all-zero digest marks empty slots, so it is tracked on its own
+    private boolean containsZero;
+
+    /** @param expectedSize hashes the set holds before it first grows */
+    public DigestSet(int expectedSize) {
+        allocate(slotCountFor(expectedSize));
+    }
+
+    /** Adds the hex card hash; false when it was already in the set. */
+    public boolean add(String cardHash) {
+        return add(digestLong(cardHash, 0), digestLong(cardHash, 1), digestLong(cardHash, 2), digestLong(cardHash, 3));
+    }
+
+    /**
+     * Adds the card hash given as the 32 digest bytes {@link CardHasher} wrote, the same hash
+     * as its hex form; false when it was already in the set.
+     */
+    public boolean add(byte[] digest) {
+        return add((long) LONG_VIEW.get(digest, 0), (long) LONG_VIEW.get(digest, 8),
+                (long) LONG_VIEW.get(digest, 16), (long) LONG_VIEW.get(digest, 24));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean add(long d0, long d1, long d2, long d3) {
+        if ((d0 | d1 | d2 | d3) == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = (int) d0 & mask;
+        while (true) {
+            int base = slot * LONGS_PER_DIGEST;
+            if (isEmpty(slots, base)) break;
+            if (slots[base] == d0 && slots[base + 1] == d1 && slots[base + 2] == d2 && slots[base + 3] == d3) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size >= resizeAt) {
+            grow();
+            insert(d0, d1, d2, d3);
+        } else {
+            store(slot * LONGS_PER_DIGEST, d0, d1, d2, d3);
+        }
+        size++;
+        return true;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        if (mask + 1 >= MAX_SLOTS) throw new IllegalStateException("Digest set cannot grow past " + MAX_SLOTS + " slots");
+        allocate((mask + 1) * 2);
+
+        for (int base = 0; base < old.length; base += LONGS_PER_DIGEST) {
+            if (!isEmpty(old, base)) insert(old[base], old[base + 1], old[base + 2], old[base + 3]);
+        }
+    }
+
+    private void insert(long d0, long d1, long d2, long d3) {
+        int slot = (int) d0 & mask;
+        while (!isEmpty(slots, slot * LONGS_PER_DIGEST)) {
+            slot = (slot + 1) & mask;
+        }
+        store(slot * LONGS_PER_DIGEST, d0, d1, d2, d3);
+    }
+
+    private void store(int base, long d0, long d1, long d2, long d3) {
+        slots[base] = d0;
+        slots[base + 1] = d1;
+        slots[base + 2] = d2;
+        slots[base + 3] = d3;
+    }
+
+    private void allocate(int slotCount) {
+        slots = new long[slotCount * LONGS_PER_DIGEST];
+        mask = slotCount - 1;
+        resizeAt = (int) (slotCount * MAX_LOAD);
+    }
+
+    private static int slotCountFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(1, expectedSize) / MAX_LOAD);
+        // Huge declared sizes are not trusted up front, the set grows into them instead
+        return (int) Math.min(MAX_INITIAL_SLOTS, Math.max(MIN_SLOTS, Long.highestOneBit(needed - 1) << 1));
+    }
+
+    private static boolean isEmpty(long[] slots, int base) {
+        return (slots[base] | slots[base + 1] | slots[base + 2] | slots[base + 3]) == 0;
+    }
+
+    private static long digestLong(String cardHash, int index) {
+        int from = index * Long.BYTES * 2;
+        return HexFormat.fromHexDigitsToLong(cardHash, from, from + Long.BYTES * 2);
+    }
+}
@@ -0,0 +1,99 @@
+package com.douglasavila.cardservice.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a batch file on local disk, for ingestion that splits the file into byte
+ * ranges and works on them in parallel. Ranges are mapped straight from the page cache with
+ * {@link FileChannel#map}, so card lines never go through a Reader.
+ * <p>
+ * Offsets are the same byte offsets {@link BatchLineReader} reports, so a checkpoint recorded
+ * by one ingestion mode is valid for the other.
+ */
+public class MappedBatchFile implements Closeable {
+
+    /** Largest range handed to {@link #map}; a single mapping cannot exceed 2GB. */
+    public static final long MAX_RANGE_SIZE = 1L << 30;
+
+    private static final int SCAN_BUFFER_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+
+    private MappedBatchFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    public static MappedBatchFile open(Path path) throws IOException {
+        return new MappedBatchFile(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the line starting at the given offset without its terminator, or null when the
+     * offset is at the end of the file.
+     */
+    public String readLine(long offset, Charset charset) throws IOException {
+        if (offset >= size) return null;
+
+        long end = lineStartAtOrAfter(offset + 1);
+        int length = (int) (end - offset);
+        ByteBuffer line = ByteBuffer.allocate(length);
+        channel.read(line, offset);
+
+        while (length > 0 && (line.get(length - 1) == '\n' || line.get(length - 1) == '\r')) {
+            length--;
+        }
+        return new String(line.array(), 0, length, charset);
+    }
+
+    /**
+     * Returns the first line start at or after the given offset: the offset itself when it is
+     * 0 or right after a '\n', otherwise the position after the next '\n' (or the file size).
+     */
+    public long lineStartAtOrAfter(long offset) throws IOException {
+        if (offset <= 0) return 0;
+        if (offset >= size) return size;
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = offset - 1;
+
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) break;
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /** Maps the bytes in [start, end) read-only. */
+    public MappedByteBuffer map(long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Range too large to map: " + (end - start) + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
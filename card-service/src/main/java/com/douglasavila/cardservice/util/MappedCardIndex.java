@@ -0,0 +1,314 @@
+package com.douglasavila.cardservice.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Card hash to card id table kept off-heap in a memory-mapped file, so tens of millions of
+ * entries cost no heap and no GC work, and reopening the file after a restart takes no more
+ * than mapping it again.
+ * <p>
+ * The file is a 4KB header followed by a power-of-two number of 48-byte slots (32 hash bytes,
+ * 16 id bytes), filled by linear probing from the first 8 hash bytes; card hashes are SHA-256,
+ * so those bits are already uniform. The slots are mapped in segments of {@link #SEGMENT_SLOTS},
+ * since one mapping cannot exceed 2GB, and a slot never straddles two segments.
+ * <p>
+ * Lookups take no lock. A writer stores the id before the hash that makes the slot visible,
+ * with a release fence in between, so a reader that matches a hash always sees its id. Writes
+ * are serialized by the table. A slot is written once: card ids do not change, so storing a
+ * hash again leaves its slot alone instead of rewriting an id a reader may be halfway through.
+ * Entries are never removed, since cards are not deleted.
+ * <p>
+ * The header keeps two owner-defined ids: a progress {@link #mark()} and the {@link #source()}
+ * the entries were copied from, for the owner to check the file still belongs to it.
+ * <p>
+ * The header also records a clean flag, cleared while the file is open. A file that was not
+ * closed cleanly may have lost writes to an OS crash; {@link #wasCleanlyClosed()} tells the
+ * owner to check it against its source again.
+ */
+public class MappedCardIndex implements Closeable {
+
+    static final int SEGMENT_SLOTS = 1 << 22;
+    private static final long MIN_SLOTS = 1 << 10;
+
+    private static final int SLOT_SIZE = CardHasher.HASH_LENGTH + 16;
+    private static final int HEADER_SIZE = 4096;
+    private static final long MAGIC = 0x4341_5244_4944_5831L;
+    private static final int VERSION = 1;
+    private static final double MAX_LOAD = 0.75;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int CLEAN_OFFSET = 32;
+    private static final int MARK_OFFSET = 40;
+    private static final int SOURCE_OFFSET = 56;
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final long slotCount;
+    private final long maxSize;
+    private final boolean cleanlyClosed;
+
+    private volatile long size;
+
+    private MappedCardIndex(FileChannel channel, long slotCount, boolean created) throws IOException {
+        this.channel = channel;
+        this.slotCount = slotCount;
+        this.maxSize = (long) (slotCount * MAX_LOAD);
+
+        long fileSize = HEADER_SIZE + slotCount * SLOT_SIZE;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        header.order(ByteOrder.BIG_ENDIAN);
+
+        int segmentCount = (int) ((slotCount + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long first = (long) i * SEGMENT_SLOTS;
+            long slots = Math.min(SEGMENT_SLOTS, slotCount - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * SLOT_SIZE, slots * SLOT_SIZE);
+        }
+
+        if (created) {
+            header.putLong(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, VERSION);
+            header.putLong(SLOTS_OFFSET, slotCount);
+            header.putLong(SIZE_OFFSET, 0);
+            header.putLong(MARK_OFFSET, 0);
+            header.putLong(MARK_OFFSET + 8, 0);
+            header.putLong(SOURCE_OFFSET, 0);
+            header.putLong(SOURCE_OFFSET + 8, 0);
+            this.cleanlyClosed = true;
+        } else {
+            this.cleanlyClosed = header.getInt(CLEAN_OFFSET) == 1;
+        }
+
+        this.size = header.getLong(SIZE_OFFSET);
+        header.putInt(CLEAN_OFFSET, 0);
+        header.force();
+
+        if (channel.size() < fileSize) {
+            throw new IOException("Card index file is shorter than its slots");
+        }
+    }
+
+    /**
+     * Opens the index at path, creating it when missing. A file with fewer slots than
+     * capacity entries need is rebuilt into a larger one first.
+     */
+    public static MappedCardIndex open(Path path, long capacity) throws IOException {
+        long slotCount = Long.highestOneBit(Math.max(MIN_SLOTS, (long) Math.ceil(capacity / MAX_LOAD)) - 1) << 1;
+
+        if (Files.notExists(path)) {
+            return create(path, slotCount);
+        }
+
+        MappedCardIndex existing = openExisting(path);
+        if (existing.slotCount >= slotCount) return existing;
+
+        // Grown once, on open, so lookups never wait for a resize
+        Path grownPath = path.resolveSibling(path.getFileName() + ".grow");
+        Files.deleteIfExists(grownPath);
+        try (MappedCardIndex old = existing; MappedCardIndex grown = create(grownPath, slotCount)) {
+            old.copyTo(grown);
+        }
+        Files.move(grownPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return openExisting(path);
+    }
+
+    public UUID get(String cardHash) {
+        byte[] hash = HEX.parseHex(cardHash);
+        long h0 = getLong(hash, 0), h1 = getLong(hash, 8), h2 = getLong(hash, 16), h3 = getLong(hash, 24);
+
+        for (long slot = firstSlot(h0), probes = 0; probes < slotCount; slot = next(slot), probes++) {
+            MappedByteBuffer segment = segments[(int) (slot / SEGMENT_SLOTS)];
+            int offset = (int) (slot % SEGMENT_SLOTS) * SLOT_SIZE;
+
+            long s0 = segment.getLong(offset);
+            if (s0 == 0 && isEmpty(segment, offset)) return null;
+
+            if (s0 == h0 && segment.getLong(offset + 8) == h1
+                    && segment.getLong(offset + 16) == h2 && segment.getLong(offset + 24) == h3) {
+                VarHandle.acquireFence();
+                return new UUID(segment.getLong(offset + 32), segment.getLong(offset + 40));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the card id of the hash, unless the hash is stored already. False, and nothing
+     * stored, when the table already holds as many entries as its load factor allows.
+     */
+    public synchronized boolean put(String cardHash, UUID cardId) {
+        byte[] hash = HEX.parseHex(cardHash);
+        long h0 = getLong(hash, 0);
+
+        for (long slot = firstSlot(h0); ; slot = next(slot)) {
+            MappedByteBuffer segment = segments[(int) (slot / SEGMENT_SLOTS)];
+            int offset = (int) (slot % SEGMENT_SLOTS) * SLOT_SIZE;
+
+            boolean empty = isEmpty(segment, offset);
+            if (!empty && matches(segment, offset, hash)) return true;
+            if (!empty) continue;
+
+            if (size >= maxSize) return false;
+
+            segment.putLong(offset + 32, cardId.getMostSignificantBits());
+            segment.putLong(offset + 40, cardId.getLeastSignificantBits());
+            // The id must be visible before the hash that publishes it
+            VarHandle.releaseFence();
+            segment.put(offset, hash);
+            size++;
+            header.putLong(SIZE_OFFSET, size);
+            return true;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    public long fileSize() {
+        return HEADER_SIZE + slotCount * SLOT_SIZE;
+    }
+
+    public boolean wasCleanlyClosed() {
+        return cleanlyClosed;
+    }
+
+    /** Owner-defined progress marker kept in the header, null until first set. */
+    public UUID mark() {
+        return getId(MARK_OFFSET);
+    }
+
+    public synchronized void setMark(UUID mark) {
+        putId(MARK_OFFSET, mark);
+    }
+
+    /** Owner-defined id of what the entries were copied from, null until first set. */
+    public UUID source() {
+        return getId(SOURCE_OFFSET);
+    }
+
+    public synchronized void setSource(UUID source) {
+        putId(SOURCE_OFFSET, source);
+    }
+
+    /** Writes every change back to the file. */
+    public synchronized void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        header.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        header.putInt(CLEAN_OFFSET, 1);
+        header.force();
+        channel.close();
+    }
+
+    private void copyTo(MappedCardIndex target) {
+        byte[] hash = new byte[CardHasher.HASH_LENGTH];
+
+        for (MappedByteBuffer segment : segments) {
+            for (int offset = 0; offset < segment.capacity(); offset += SLOT_SIZE) {
+                if (isEmpty(segment, offset)) continue;
+
+                segment.get(offset, hash);
+                target.put(HEX.formatHex(hash), new UUID(segment.getLong(offset + 32), segment.getLong(offset + 40)));
+            }
+        }
+        // A dirty file may be missing writes, so the grown one must be checked from the start too
+        target.setMark(cleanlyClosed ? mark() : null);
+        target.setSource(source());
+    }
+
+    private UUID getId(int offset) {
+        long most = header.getLong(offset);
+        long least = header.getLong(offset + 8);
+        return most == 0 && least == 0 ? null : new UUID(most, least);
+    }
+
+    private void putId(int offset, UUID id) {
+        header.putLong(offset, id == null ? 0 : id.getMostSignificantBits());
+        header.putLong(offset + 8, id == null ? 0 : id.getLeastSignificantBits());
+    }
+
+    private static MappedCardIndex create(Path path, long slotCount) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+        try {
+            // Sparse where the file system allows: empty slots take no disk until written
+            channel.write(ByteBuffer.allocate(1), HEADER_SIZE + slotCount * SLOT_SIZE - 1);
+            return new MappedCardIndex(channel, slotCount, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static MappedCardIndex openExisting(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getLong(MAGIC_OFFSET) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a card index file: " + path);
+            }
+            return new MappedCardIndex(channel, header.getLong(SLOTS_OFFSET), false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private long firstSlot(long h0) {
+        return h0 & (slotCount - 1);
+    }
+
+    private long next(long slot) {
+        return (slot + 1) & (slotCount - 1);
+    }
+
+    private static boolean isEmpty(MappedByteBuffer segment, int offset) {
+        return segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0
+                && segment.getLong(offset + 16) == 0 && segment.getLong(offset + 24) == 0;
+    }
+
+    private static boolean matches(MappedByteBuffer segment, int offset, byte[] hash) {
+        for (int i = 0; i < CardHasher.HASH_LENGTH; i += 8) {
+            if (segment.getLong(offset + i) != getLong(hash, i)) return false;
+        }
+        return true;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
+}
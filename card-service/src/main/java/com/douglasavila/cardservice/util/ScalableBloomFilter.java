@@ -0,0 +1,156 @@
+package com.douglasavila.cardservice.util;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe scalable Bloom filter of card hashes, the hex SHA-256 Strings {@link CardHasher}
+ * produces. {@link #mightContain} never answers false for a key that was added; it answers true
+ * for a key that was not with about the configured false positive probability.
+ * <p>
+ * The digests are already uniform, so the two probe hashes are simply the first two 64-bit
+ * words of the digest, read from the first 32 hex characters; no key is hashed again.
+ * <p>
+ * The filter is a series of plain Bloom filters (slices). Keys go to the newest slice until it
+ * holds its capacity, then a slice twice as large is added, with half the false positive
+ * probability of the previous one, so the total stays below the configured one however many
+ * keys are added. Bits are set with atomic ORs, so adds and checks need no lock.
+ */
+public final class ScalableBloomFilter {
+
+    private static final int GROWTH = 2;
+    private static final double TIGHTENING = 0.5;
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    private static final class Slice {
+
+        private final long capacity;
+        private final double falsePositiveRate;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicLongArray words;
+        private final AtomicLong keys = new AtomicLong();
+
+        Slice(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+            this.bitCount = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED));
+            this.hashCount = Math.max(1, (int) Math.round(-Math.log(falsePositiveRate) / Math.log(2)));
+            this.words = new AtomicLongArray(Math.toIntExact((bitCount + 63) / 64));
+        }
+
+        void add(long hash1, long hash2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                long mask = 1L << bit;
+                words.accumulateAndGet((int) (bit >>> 6), mask, (word, m) -> word | m);
+            }
+            keys.incrementAndGet();
+        }
+
+        boolean mightContain(long hash1, long hash2) {
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        boolean isFull() {
+            return keys.get() >= capacity;
+        }
+
+        // Standard estimate for the keys actually added: (1 - e^(-k * n / m))^k
+        double estimatedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-hashCount * (double) keys.get() / bitCount), hashCount);
+        }
+    }
+
+    private volatile Slice[] slices;
+
+    /**
+     * @param initialCapacity   keys the first slice holds before the filter grows
+     * @param falsePositiveRate upper bound for the false positive probability of the whole filter
+     */
+    public ScalableBloomFilter(long initialCapacity, double falsePositiveRate) {
+        if (initialCapacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Capacity must be positive and false positive rate in (0, 1)");
+        }
+        // The slices' rates are a geometric series, so the first one gets (1 - TIGHTENING) of the budget
+        this.slices = new Slice[] { new Slice(initialCapacity, falsePositiveRate * (1 - TIGHTENING)) };
+    }
+
+    public void add(String key) {
+        long hash1 = hash1(key);
+        long hash2 = hash2(key);
+
+        Slice[] current = slices;
+        if (current[current.length - 1].mightContain(hash1, hash2)) return;
+
+        newestSlice().add(hash1, hash2);
+    }
+
+    public boolean mightContain(String key) {
+        long hash1 = hash1(key);
+        long hash2 = hash2(key);
+
+        for (Slice slice : slices) {
+            if (slice.mightContain(hash1, hash2)) return true;
+        }
+        return false;
+    }
+
+    /** Bytes taken by the bits of every slice. */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Slice slice : slices) {
+            bytes += slice.words.length() * (long) Long.BYTES;
+        }
+        return bytes;
+    }
+
+    /** Keys added so far, not counting repeated ones the filter already answered true for. */
+    public long size() {
+        long keys = 0;
+        for (Slice slice : slices) {
+            keys += slice.keys.get();
+        }
+        return keys;
+    }
+
+    /** Estimated false positive probability for the keys added so far. */
+    public double estimatedFalsePositiveRate() {
+        double allNegative = 1;
+        for (Slice slice : slices) {
+            allNegative *= 1 - slice.estimatedFalsePositiveRate();
+        }
+        return 1 - allNegative;
+    }
+
+    private Slice newestSlice() {
+        Slice[] current = slices;
+        Slice newest = current[current.length - 1];
+        if (!newest.isFull()) return newest;
+
+        synchronized (this) {
+            current = slices;
+            newest = current[current.length - 1];
+            if (!newest.isFull()) return newest;
+
+            Slice[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = new Slice(newest.capacity * GROWTH, newest.falsePositiveRate * TIGHTENING);
+            slices = grown;
+            return grown[current.length];
+        }
+    }
+
+    private static long hash1(String key) {
+        return HexFormat.fromHexDigitsToLong(key, 0, 16);
+    }
+
+    private static long hash2(String key) {
+        return HexFormat.fromHexDigitsToLong(key, 16, 32) | 1;
+    }
+}
@@ -0,0 +1,92 @@
+package com.douglasavila.cardservice.util;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.Card;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * {@link BatchParser} working on decoded lines. Accepts input in any charset, and card numbers
+ * with spaces or dashes between the digits. The card status is left for the caller to set.
+ */
+public class StringBatchParser implements BatchParser {
+
+    private static final Logger log = LoggerFactory.getLogger(StringBatchParser.class);
+
+    private final CardHasher hasher;
+    private final boolean luhn;
+    private final Supplier<BinRangeIndex> bins;
+
+    public StringBatchParser(CardHasher hasher) {
+        this(hasher, false, () -> BinRangeIndex.EMPTY);
+    }
+
+    /**
+     * @param luhn whether card numbers must also pass the Luhn check
+     * @param bins the BIN table in use, asked once per card so a reloaded table applies at once
+     */
+    public StringBatchParser(CardHasher hasher, boolean luhn, Supplier<BinRangeIndex> bins) {
+        this.hasher = hasher;
+        this.luhn = luhn;
+        this.bins = bins;
+    }
+
+    private final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Override
+    public Batch parseHeaderLine(String line) {
+
+        if (line == null || line.length() < 51) {
+            throw new IllegalArgumentException("Invalid header line.");
+        }
+
+        String fileName = line.substring(0, 29).trim();
+        String dateStr = line.substring(29, 37);
+        String batchCode = line.substring(37, 45).trim();
+        String recordCountStr = line.substring(45, 51).trim();
+        int recordCount = Integer.parseInt(recordCountStr);
+
+        LocalDate fileDate = LocalDate.parse(dateStr, DATE_FORMAT);
+
+        return new Batch(
+                fileName,
+                fileDate,
+                batchCode,
+                recordCount
+        );
+    }
+
+    @Override
+    public Optional<Card> parseCardLines(String line) {
+
+        if (line == null || line.length() < 51) {
+            log.debug("Invalid card line: {} characters, expected 51", line == null ? 0 : line.length());
+            return Optional.empty();
+        }
+
+        String batchSequenceNumber = line.substring(1, 7).trim();
+        String cardNumber = line.substring(7, 26).trim();
+
+        if (!CardNumberValidator.isValidPan(cardNumber, luhn)) {
+            log.debug("Invalid card number in record {}", batchSequenceNumber);
+            return Optional.empty();
+        }
+
+        String cardHash = hasher.hash(cardNumber);
+
+        Card card = new Card(
+                cardHash,
+                hasher.last4(cardNumber),
+                null);
+        card.setBatchSequenceNumber(batchSequenceNumber);
+        bins.get().classify(card, cardNumber);
+
+        return Optional.of(card);
+    }
+}
@@ -0,0 +1,59 @@
+package com.douglasavila.cardservice.util;
+
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * UUIDv7 (RFC 9562) ids: a 48-bit Unix millisecond timestamp followed by random bits.
+ * <p>
+ * Ids created close in time sort next to each other, so rows keyed by them are appended at
+ * the end of the InnoDB clustered index instead of landing on random pages, which keeps page
+ * splits and fragmentation down while the cards table grows. The random part comes from
+ * {@link ThreadLocalRandom}, so generating ids takes no lock and shares no state between threads.
+ * <p>
+ * The database orders ids as 16 unsigned bytes, which {@link UUID#compareTo} does not: it
+ * compares signed longs. {@link #DATABASE_ORDER} is the order the database uses.
+ */
+public final class TimeOrderedUuid {
+
+    private static final long VERSION_7 = 0x7000L;
+    private static final long VARIANT_RFC_9562 = 0x8000_0000_0000_0000L;
+
+    /** Ids ordered like the database orders binary(16) keys, byte by byte and unsigned. */
+    public static final Comparator<UUID> DATABASE_ORDER = Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
+    private TimeOrderedUuid() {}
+
+    public static UUID next() {
+        return next(System.currentTimeMillis());
+    }
+
+    /** The smallest id {@link #next} can create at the given millisecond. */
+    public static UUID lowest(long epochMillis) {
+        return new UUID((epochMillis << 16) | VERSION_7, VARIANT_RFC_9562);
+    }
+
+    /** Whether the id is a UUIDv7, so that it starts with its creation millisecond. */
+    public static boolean isTimeOrdered(UUID id) {
+        return id.version() == 7 && id.variant() == 2;
+    }
+
+    /** Creation millisecond of a UUIDv7 id. */
+    public static long epochMillis(UUID id) {
+        return id.getMostSignificantBits() >>> 16;
+    }
+
+    static UUID next(long epochMillis) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        // unix_ts_ms (48 bits) | ver (4 bits) | rand_a (12 bits)
+        long mostSignificantBits = (epochMillis << 16) | VERSION_7 | (random.nextLong() & 0x0fffL);
+        // var (2 bits) | rand_b (62 bits)
+        long leastSignificantBits = VARIANT_RFC_9562 | (random.nextLong() & 0x3fff_ffff_ffff_ffffL);
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
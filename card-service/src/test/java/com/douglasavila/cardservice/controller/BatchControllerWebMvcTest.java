@@ -0,0 +1,88 @@
+package com.douglasavila.cardservice.controller;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.BatchStatus;
+import com.douglasavila.cardservice.repository.BatchRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(BatchController.class)
+@AutoConfigureMockMvc(addFilters = false)
+class BatchControllerWebMvcTest {
+
+    @Autowired
+    private MockMvc mvc;
+
+    @MockitoBean
+    private BatchRepository batchRepository;
+
+    @Test
+    void getBatch_returnsProgress_andThroughputOfFinishedAttempt() throws Exception {
+        Batch batch = batch("PROCESSED", 10, 10);
+        batch.setDuplicateRecords(3);
+        batch.setStartedDate(Instant.parse("2026-02-15T10:00:00Z"));
+        batch.setProcessingDate(Instant.parse("2026-02-15T10:00:04Z"));
+        when(batchRepository.findByBatchId(batch.getBatchId())).thenReturn(Optional.of(batch));
+
+        mvc.perform(get("/batches/{batchId}", batch.getBatchId()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.batchId").value(batch.getBatchId().toString()))
+                .andExpect(jsonPath("$.batchCode").value("LOTE0001"))
+                .andExpect(jsonPath("$.status").value("PROCESSED"))
+                .andExpect(jsonPath("$.expectedRecords").value(10))
+                .andExpect(jsonPath("$.processedRecords").value(10))
+                .andExpect(jsonPath("$.duplicateRecords").value(3))
+                .andExpect(jsonPath("$.recordsPerSecond").value(2.5));
+    }
+
+    @Test
+    void getBatch_leavesThroughputOut_whenFailedAttemptHasNoEnd() throws Exception {
+        Batch batch = batch("FAILED", 10, 4);
+        batch.setStartedDate(Instant.parse("2026-02-15T10:00:00Z"));
+        when(batchRepository.findByBatchId(batch.getBatchId())).thenReturn(Optional.of(batch));
+
+        mvc.perform(get("/batches/{batchId}", batch.getBatchId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("FAILED"))
+                .andExpect(jsonPath("$.processedRecords").value(4))
+                .andExpect(jsonPath("$.recordsPerSecond").doesNotExist());
+    }
+
+    @Test
+    void getBatch_returns404_whenBatchDoesNotExist() throws Exception {
+        UUID batchId = UUID.randomUUID();
+        when(batchRepository.findByBatchId(batchId)).thenReturn(Optional.empty());
+
+        mvc.perform(get("/batches/{batchId}", batchId))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.status").value(404))
+                .andExpect(jsonPath("$.error").value("Not Found"))
+                .andExpect(jsonPath("$.message").value("Batch with the provided id does not exist."));
+    }
+
+    private static Batch batch(String statusName, int expectedRecords, int processedRecords) {
+        BatchStatus status = new BatchStatus();
+        status.setBatchStatusName(statusName);
+
+        Batch batch = new Batch("CARD-PROCESSING-BATCH", LocalDate.of(2018, 5, 24), "LOTE0001", expectedRecords);
+        batch.setBatchId(UUID.randomUUID());
+        batch.setBatchStatus(status);
+        batch.setProcessedRecords(processedRecords);
+        return batch;
+    }
+}
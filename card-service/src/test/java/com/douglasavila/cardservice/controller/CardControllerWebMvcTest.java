@@ -3,22 +3,40 @@ package com.douglasavila.cardservice.controller;
 import com.douglasavila.cardservice.entity.Card;
 import com.douglasavila.cardservice.entity.CardStatus;
 import com.douglasavila.cardservice.repository.CardRepository;
-import com.douglasavila.cardservice.repository.CardStatusRepository;
+import com.douglasavila.cardservice.service.BatchIngestJobs;
+import com.douglasavila.cardservice.service.BinTable;
 import com.douglasavila.cardservice.service.CardBatchIngestService;
+import com.douglasavila.cardservice.service.CardBulkCreateService;
+import com.douglasavila.cardservice.service.CardBulkLookupService;
+import com.douglasavila.cardservice.service.CardGroupCommitter;
+import com.douglasavila.cardservice.service.CardLookupService;
+import com.douglasavila.cardservice.service.StatusRegistry;
+import com.douglasavila.cardservice.util.BinRangeIndex;
 import com.douglasavila.cardservice.util.CardHasher;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import tools.jackson.core.exc.StreamReadException;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -35,7 +53,7 @@ class CardControllerWebMvcTest {
     private CardRepository cardRepository;
 
     @MockitoBean
-    private CardStatusRepository cardStatusRepository;
+    private StatusRegistry statusRegistry;
 
     @MockitoBean
     private CardHasher hasher;
@@ -43,9 +61,32 @@ class CardControllerWebMvcTest {
     @MockitoBean
     private CardBatchIngestService ingestService;
 
+    @MockitoBean
+    private CardLookupService cardLookupService;
+
+    @MockitoBean
+    private CardBulkLookupService bulkLookupService;
+
+    @MockitoBean
+    private CardBulkCreateService bulkCreateService;
+
+    @MockitoBean
+    private CardGroupCommitter groupCommitter;
+
+    @MockitoBean
+    private BatchIngestJobs ingestJobs;
+
+    @MockitoBean
+    private BinTable binTable;
+
     private static final String VALID_PAN = "4111111111111111";
     private static final String INVALID_PAN = "123";
 
+    @BeforeEach
+    void emptyBinTable() {
+        when(binTable.current()).thenReturn(BinRangeIndex.EMPTY);
+    }
+
     @Test
     void createCard_returns400_whenPanIsInvalid() throws Exception {
         mvc.perform(post("/card")
@@ -59,7 +100,7 @@ class CardControllerWebMvcTest {
                 .andExpect(jsonPath("$.error").value("Bad Request"))
                 .andExpect(jsonPath("$.message").value("Card number is invalid"));
 
-        verifyNoInteractions(hasher, cardRepository, cardStatusRepository);
+        verifyNoInteractions(hasher, cardRepository, statusRegistry);
     }
 
     @Test
@@ -68,8 +109,9 @@ class CardControllerWebMvcTest {
 
         when(hasher.hash(VALID_PAN)).thenReturn(hash);
         when(hasher.last4(VALID_PAN)).thenReturn("1111");
+        when(cardLookupService.mightExist(hash)).thenReturn(true);
         when(cardRepository.findByCardHash(hash)).thenReturn(Optional.empty());
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.toString()))
+        when(statusRegistry.cardStatus(CardStatus.Values.VALID))
                 .thenReturn(mock(CardStatus.class));
         when(cardRepository.save(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
 
@@ -84,9 +126,72 @@ class CardControllerWebMvcTest {
         verify(hasher).hash(VALID_PAN);
         verify(hasher).last4(VALID_PAN);
         verify(cardRepository).findByCardHash(hash);
-        verify(cardStatusRepository).findByCardStatusName(CardStatus.Values.VALID.toString());
+        verify(statusRegistry).cardStatus(CardStatus.Values.VALID);
+        verify(cardRepository).save(any(Card.class));
+        verify(cardLookupService).mightExist(hash);
+        verify(cardLookupService).invalidate(hash);
+        verifyNoMoreInteractions(cardRepository, hasher, statusRegistry, cardLookupService);
+    }
+
+    @Test
+    void createCard_savesWithoutLookingUp_whenHashFilterHasNeverSeenCard() throws Exception {
+        String hash = "hash-new";
+
+        when(hasher.hash(VALID_PAN)).thenReturn(hash);
+        when(hasher.last4(VALID_PAN)).thenReturn("1111");
+        when(cardLookupService.mightExist(hash)).thenReturn(false);
+        when(cardRepository.save(any(Card.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        mvc.perform(post("/card")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"cardNumber":"%s"}
+                                """.formatted(VALID_PAN)))
+                .andExpect(status().isOk());
+
+        verify(cardRepository, never()).findByCardHash(anyString());
         verify(cardRepository).save(any(Card.class));
-        verifyNoMoreInteractions(cardRepository, hasher, cardStatusRepository);
+        verify(cardLookupService).invalidate(hash);
+    }
+
+    @Test
+    void createCard_returns200ForBothRequests_whenSameNewCardIsCreatedConcurrently() throws Exception {
+        String hash = "hash-raced";
+        CyclicBarrier bothSaving = new CyclicBarrier(2);
+        AtomicInteger saves = new AtomicInteger();
+
+        when(hasher.hash(VALID_PAN)).thenReturn(hash);
+        when(hasher.last4(VALID_PAN)).thenReturn("1111");
+        when(cardLookupService.mightExist(hash)).thenReturn(false);
+        // Both requests get past the filter; the unique card_hash lets only the first insert through
+        when(cardRepository.save(any(Card.class))).thenAnswer(inv -> {
+            bothSaving.await(5, TimeUnit.SECONDS);
+            if (saves.incrementAndGet() > 1) throw new DataIntegrityViolationException("Duplicate entry for card_hash");
+            return inv.getArgument(0);
+        });
+        when(cardRepository.findByCardHash(hash)).thenReturn(Optional.of(mock(Card.class)));
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(this::createValidCard);
+        CompletableFuture<Void> second = CompletableFuture.runAsync(this::createValidCard);
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+
+        verify(cardRepository, times(2)).save(any(Card.class));
+        verify(cardRepository).findByCardHash(hash);
+        verify(cardLookupService, times(2)).invalidate(hash);
+    }
+
+    @Test
+    void createCard_rethrows_whenSaveFailsAndCardStillDoesNotExist() {
+        String hash = "hash-invalid";
+
+        when(hasher.hash(VALID_PAN)).thenReturn(hash);
+        when(hasher.last4(VALID_PAN)).thenReturn("1111");
+        when(cardLookupService.mightExist(hash)).thenReturn(false);
+        when(cardRepository.save(any(Card.class))).thenThrow(new DataIntegrityViolationException("card_last4 is null"));
+        when(cardRepository.findByCardHash(hash)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(this::createValidCard).hasRootCauseInstanceOf(DataIntegrityViolationException.class);
+        verify(cardLookupService, never()).invalidate(hash);
     }
 
     @Test
@@ -94,6 +199,7 @@ class CardControllerWebMvcTest {
         String hash = "hash-existing";
 
         when(hasher.hash(VALID_PAN)).thenReturn(hash);
+        when(cardLookupService.mightExist(hash)).thenReturn(true);
         when(cardRepository.findByCardHash(hash)).thenReturn(Optional.of(mock(Card.class)));
 
         mvc.perform(post("/card")
@@ -108,7 +214,28 @@ class CardControllerWebMvcTest {
         verify(cardRepository).findByCardHash(hash);
         verify(hasher, never()).last4(anyString());
         verify(cardRepository, never()).save(any(Card.class));
-        verifyNoInteractions(cardStatusRepository);
+        verify(cardLookupService).mightExist(hash);
+        verifyNoMoreInteractions(cardLookupService);
+        verifyNoInteractions(statusRegistry);
+    }
+
+    @Test
+    void createCard_returns200_andQueuesCard_whenGroupCommitIsEnabled() throws Exception {
+        when(groupCommitter.isEnabled()).thenReturn(true);
+        when(hasher.hash(VALID_PAN)).thenReturn("hash-grouped");
+        when(hasher.last4(VALID_PAN)).thenReturn("1111");
+
+        mvc.perform(post("/card")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"cardNumber":"%s"}
+                                """.formatted(VALID_PAN)))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Card created with success or already exists."));
+
+        verify(groupCommitter).create(argThat(card ->
+                card.getCardHash().equals("hash-grouped") && card.getCardLast4().equals("1111")));
+        verifyNoInteractions(cardRepository, cardLookupService);
     }
 
     @Test
@@ -124,7 +251,7 @@ class CardControllerWebMvcTest {
                 .andExpect(jsonPath("$.error").value("Bad Request"))
                 .andExpect(jsonPath("$.message").value("Card number is invalid."));
 
-        verifyNoInteractions(hasher, cardRepository);
+        verifyNoInteractions(hasher, cardLookupService);
     }
 
     @Test
@@ -132,7 +259,7 @@ class CardControllerWebMvcTest {
         String hash = "hash-notfound";
 
         when(hasher.hash(VALID_PAN)).thenReturn(hash);
-        when(cardRepository.findByCardHash(hash)).thenReturn(Optional.empty());
+        when(cardLookupService.findCardId(hash)).thenReturn(Optional.empty());
 
         mvc.perform(get("/card")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -146,8 +273,9 @@ class CardControllerWebMvcTest {
                 .andExpect(jsonPath("$.message").value("Card with the provided number does not exist."));
 
         verify(hasher).hash(VALID_PAN);
-        verify(cardRepository).findByCardHash(hash);
-        verifyNoMoreInteractions(hasher, cardRepository);
+        verify(cardLookupService).findCardId(hash);
+        verifyNoMoreInteractions(hasher, cardLookupService);
+        verifyNoInteractions(cardRepository);
     }
 
     @Test
@@ -155,10 +283,8 @@ class CardControllerWebMvcTest {
         String hash = "hash-found";
         UUID id = UUID.randomUUID();
 
-        Card existing = mock(Card.class);
-        when(existing.getId()).thenReturn(id);
         when(hasher.hash(VALID_PAN)).thenReturn(hash);
-        when(cardRepository.findByCardHash(hash)).thenReturn(Optional.of(existing));
+        when(cardLookupService.findCardId(hash)).thenReturn(Optional.of(id));
 
         mvc.perform(get("/card")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -170,8 +296,9 @@ class CardControllerWebMvcTest {
                 .andExpect(jsonPath("$.cardId").value(id.toString()));
 
         verify(hasher).hash(VALID_PAN);
-        verify(cardRepository).findByCardHash(hash);
-        verifyNoMoreInteractions(hasher, cardRepository);
+        verify(cardLookupService).findCardId(hash);
+        verifyNoMoreInteractions(hasher, cardLookupService);
+        verifyNoInteractions(cardRepository);
     }
 
     @Test
@@ -214,4 +341,158 @@ class CardControllerWebMvcTest {
         verify(ingestService).ingest(any(), eq(StandardCharsets.UTF_8));
         verifyNoMoreInteractions(ingestService);
     }
+
+    @Test
+    void createCardsBatchStream_ingestsRawBody_withCharsetOfContentType() throws Exception {
+        byte[] content = "DESAFIO-HYPERATIVA           20180524LOTE0001000010\n".getBytes(StandardCharsets.ISO_8859_1);
+        doAnswer(inv -> {
+            assertThat(inv.<InputStream>getArgument(0).readAllBytes()).isEqualTo(content);
+            return null;
+        }).when(ingestService).ingest(any(), any());
+
+        mvc.perform(post("/cards")
+                        .contentType("text/plain;charset=ISO-8859-1")
+                        .content(content))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Batch file processed with success."));
+
+        verify(ingestService).ingest(any(), eq(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    void createCardsBatchStream_returns400_whenBodyIsEmpty() throws Exception {
+        mvc.perform(post("/cards")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[0]))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("Cards file is null or empty"));
+
+        verifyNoInteractions(ingestService, ingestJobs);
+    }
+
+    @Test
+    void createCardsBatchStream_returns202_whenAsyncIngestionIsEnabled() throws Exception {
+        UUID batchId = UUID.randomUUID();
+        when(ingestJobs.isEnabled()).thenReturn(true);
+        when(ingestJobs.submit(any(), eq(StandardCharsets.UTF_8))).thenReturn(Optional.of(batchId));
+
+        mvc.perform(post("/cards")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content("DESAFIO-HYPERATIVA           20180524LOTE0001000010\n"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.batchId").value(batchId.toString()));
+
+        verifyNoInteractions(ingestService);
+    }
+
+    @Test
+    void createCardsBatch_returns202_withBatchId_whenAsyncIngestionIsEnabled() throws Exception {
+        UUID batchId = UUID.randomUUID();
+        when(ingestJobs.isEnabled()).thenReturn(true);
+        when(ingestJobs.submit(any(), eq(StandardCharsets.UTF_8))).thenReturn(Optional.of(batchId));
+
+        mvc.perform(multipart("/cards").file(batchFile()))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/batches/" + batchId))
+                .andExpect(jsonPath("$.batchId").value(batchId.toString()));
+
+        verifyNoInteractions(ingestService);
+    }
+
+    @Test
+    void createCardsBatch_returns503_whenAsyncIngestionQueueIsFull() throws Exception {
+        when(ingestJobs.isEnabled()).thenReturn(true);
+        when(ingestJobs.submit(any(), any())).thenThrow(new RejectedExecutionException("full"));
+
+        mvc.perform(multipart("/cards").file(batchFile()))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.status").value(503))
+                .andExpect(jsonPath("$.error").value("Service Unavailable"));
+
+        verifyNoInteractions(ingestService);
+    }
+
+    @Test
+    void createCardsBatch_returns200_whenAsyncBatchWasAlreadyProcessed() throws Exception {
+        when(ingestJobs.isEnabled()).thenReturn(true);
+        when(ingestJobs.submit(any(), any())).thenReturn(Optional.empty());
+
+        mvc.perform(multipart("/cards").file(batchFile()))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Batch file processed with success."));
+    }
+
+    @Test
+    void createCards_streamsNdjsonResults_forJsonArrayBody() throws Exception {
+        doAnswer(inv -> {
+            OutputStream out = inv.getArgument(1);
+            out.write("{\"status\":\"CREATED\"}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bulkCreateService).create(any(), any());
+
+        mvc.perform(post("/cards")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"%s\"]".formatted(VALID_PAN)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"status\":\"CREATED\"}\n"));
+
+        verify(bulkCreateService).create(any(), any());
+        verifyNoInteractions(ingestService);
+    }
+
+    @Test
+    void lookupCards_streamsNdjsonResults() throws Exception {
+        doAnswer(inv -> {
+            OutputStream out = inv.getArgument(1);
+            out.write("{\"status\":\"NOT_FOUND\"}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bulkLookupService).lookup(any(), any());
+
+        mvc.perform(post("/cards/lookup")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("\"%s\"\n".formatted(VALID_PAN)))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"status\":\"NOT_FOUND\"}\n"));
+
+        verify(bulkLookupService).lookup(any(), any());
+    }
+
+    @Test
+    void lookupCards_returns400_whenBodyIsMalformedBeforeAnyResult() throws Exception {
+        doThrow(new StreamReadException("Unexpected token")).when(bulkLookupService).lookup(any(), any());
+
+        mvc.perform(post("/cards/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status").value(400))
+                .andExpect(jsonPath("$.error").value("Bad Request"))
+                .andExpect(jsonPath("$.message").value("Card numbers must be a JSON array or NDJSON stream of strings."));
+    }
+
+    private static MockMultipartFile batchFile() {
+        return new MockMultipartFile(
+                "file",
+                "cards.txt",
+                MediaType.TEXT_PLAIN_VALUE,
+                "DESAFIO-HYPERATIVA           20180524LOTE0001000010\n".getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    private void createValidCard() {
+        try {
+            mvc.perform(post("/card")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"cardNumber":"%s"}
+                                    """.formatted(VALID_PAN)))
+                    .andExpect(status().isOk())
+                    .andExpect(content().string("Card created with success or already exists."));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
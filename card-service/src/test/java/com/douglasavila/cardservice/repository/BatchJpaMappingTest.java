@@ -9,7 +9,9 @@ import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ActiveProfiles;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.*;
 
@@ -30,11 +32,31 @@ class BatchJpaMappingTest {
         Batch saved = batchRepository.saveAndFlush(batch);
 
         assertThat(saved.getBatchId()).isNotNull();
+        assertThat(saved.getBatchId().version()).isEqualTo(7);
         assertThat(saved.getFileName()).isEqualTo("fileA.txt");
         assertThat(saved.getBatchCode()).isEqualTo("LOTE0001");
         assertThat(saved.getExpectedRecords()).isEqualTo(10);
     }
 
+    @Test
+    void findByBatchId_loadsBatchWithStatusAndStartedDate() {
+        BatchStatus received = new BatchStatus();
+        received.setBatchStatusName("RECEIVED");
+        em.persist(received);
+
+        Batch batch = new Batch("fileA.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 10);
+        batch.setBatchStatus(received);
+        batch.setStartedDate(Instant.parse("2026-02-15T10:00:00Z"));
+        batch = batchRepository.saveAndFlush(batch);
+        em.clear();
+
+        Batch found = batchRepository.findByBatchId(batch.getBatchId()).orElseThrow();
+
+        assertThat(found.getStartedDate()).isEqualTo(Instant.parse("2026-02-15T10:00:00Z"));
+        assertThat(found.getBatchStatus().getBatchStatusName()).isEqualTo("RECEIVED");
+        assertThat(batchRepository.findByBatchId(UUID.randomUUID())).isEmpty();
+    }
+
     @Test
     void save_enforcesUniqueConstraint_onBatchCodeAndFileName() {
         batchRepository.saveAndFlush(
@@ -48,29 +70,65 @@ class BatchJpaMappingTest {
         ).isInstanceOf(DataIntegrityViolationException.class);
     }
 
-//    @Test
-//    void save_withoutCascade_doesNotPersistTransientBatchStatus() {
-//        Batch batch = new Batch("fileB.txt", LocalDate.of(2026, 2, 15), "LOTE0002", 5);
-//
-//        BatchStatus transientStatus = new BatchStatus();
-//        batch.setBatchStatus(transientStatus);
-//
-//        assertThatThrownBy(() -> batchRepository.saveAndFlush(batch))
-//                .isInstanceOfAny(RuntimeException.class);
-//    }
-//
-//    @Test
-//    void save_withoutCascade_allowsLinkingToAlreadyPersistedStatus() {
-//        BatchStatus status = new BatchStatus();
-//        em.persist(status);
-//        em.flush();
-//
-//        Batch batch = new Batch("fileC.txt", LocalDate.of(2026, 2, 15), "LOTE0003", 3);
-//        batch.setBatchStatus(status);
-//
-//        Batch saved = batchRepository.saveAndFlush(batch);
-//
-//        assertThat(saved.getBatchId()).isNotNull();
-//        assertThat(saved.getBatchStatus()).isNotNull();
-//    }
+    @Test
+    void updateProgress_updatesCountAndCheckpoint_ofTargetBatchOnly() {
+        Batch target = batchRepository.saveAndFlush(
+                new Batch("fileA.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 10));
+        Batch other = batchRepository.saveAndFlush(
+                new Batch("fileB.txt", LocalDate.of(2026, 2, 15), "LOTE0002", 10));
+
+        int updated = batchRepository.updateProgress(target.getBatchId(), 7, 2, "7", 420L);
+        em.clear();
+
+        Batch reloaded = batchRepository.findById(target.getBatchId()).orElseThrow();
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(reloaded.getProcessedRecords()).isEqualTo(7);
+        assertThat(reloaded.getDuplicateRecords()).isEqualTo(2);
+        assertThat(reloaded.getLastSequenceNumber()).isEqualTo("7");
+        assertThat(reloaded.getCheckpointOffset()).isEqualTo(420L);
+        assertThat(batchRepository.findById(other.getBatchId()).orElseThrow().getProcessedRecords()).isNull();
+    }
+
+    @Test
+    void addProcessedRecords_incrementsCountsOfTargetBatch() {
+        Batch target = new Batch("fileA.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 10);
+        target.setProcessedRecords(2);
+        target.setDuplicateRecords(0);
+        target = batchRepository.saveAndFlush(target);
+
+        batchRepository.addProcessedRecords(target.getBatchId(), 3, 1);
+        batchRepository.addProcessedRecords(target.getBatchId(), 4, 0);
+        em.clear();
+
+        Batch reloaded = batchRepository.findById(target.getBatchId()).orElseThrow();
+        assertThat(reloaded.getProcessedRecords()).isEqualTo(9);
+        assertThat(reloaded.getDuplicateRecords()).isEqualTo(1);
+    }
+
+    @Test
+    void save_withoutCascade_doesNotPersistTransientBatchStatus() {
+        Batch batch = new Batch("fileB.txt", LocalDate.of(2026, 2, 15), "LOTE0002", 5);
+
+        BatchStatus transientStatus = new BatchStatus();
+        batch.setBatchStatus(transientStatus);
+
+        assertThatThrownBy(() -> batchRepository.saveAndFlush(batch))
+                .isInstanceOfAny(RuntimeException.class);
+    }
+
+    @Test
+    void save_withoutCascade_allowsLinkingToAlreadyPersistedStatus() {
+        BatchStatus status = new BatchStatus();
+        em.persist(status);
+        em.flush();
+
+        Batch batch = new Batch("fileC.txt", LocalDate.of(2026, 2, 15), "LOTE0003", 3);
+        batch.setBatchStatus(status);
+
+        Batch saved = batchRepository.saveAndFlush(batch);
+
+        assertThat(saved.getBatchId()).isNotNull();
+        assertThat(saved.getBatchStatus()).isNotNull();
+    }
 }
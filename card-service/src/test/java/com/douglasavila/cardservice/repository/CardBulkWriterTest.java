@@ -0,0 +1,141 @@
+package com.douglasavila.cardservice.repository;
+
+import com.douglasavila.cardservice.entity.*;
+import com.douglasavila.cardservice.util.CardHasher;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+
+// ON DUPLICATE KEY UPDATE needs the MySQL compatibility mode configured in the test profile
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@ActiveProfiles("test")
+@Import(CardBulkWriter.class)
+class CardBulkWriterTest {
+
+    @Autowired
+    private CardBulkWriter cardBulkWriter;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Test
+    void write_insertsAllCards_readableThroughJpa() {
+        BatchStatus batchStatus = em.find(BatchStatus.class, 1L);
+        Batch batch = new Batch("bulk-file.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 2);
+        batch.setBatchStatus(batchStatus);
+        em.persist(batch);
+        em.flush();
+
+        CardStatus cardStatus = em.find(CardStatus.class, 1L);
+
+        Card first = new Card(hash("hash-bulk-1"), "1111", cardStatus);
+        first.setBatch(batch);
+        first.setBatchSequenceNumber("1");
+        Card second = new Card(hash("hash-bulk-2"), "2222", cardStatus);
+        second.setBatch(batch);
+        second.setBatchSequenceNumber("2");
+
+        cardBulkWriter.write(List.of(first, second));
+        em.clear();
+
+        Optional<Card> found = cardRepository.findByCardHash(hash("hash-bulk-2"));
+
+        assertThat(found).isPresent();
+        assertThat(found.get().getId()).isEqualTo(second.getId());
+        assertThat(found.get().getCardLast4()).isEqualTo("2222");
+        assertThat(found.get().getBatchSequenceNumber()).isEqualTo("2");
+        assertThat(found.get().getBatch().getBatchId()).isEqualTo(batch.getBatchId());
+        assertThat(found.get().getCardStatus().getCardStatusId()).isEqualTo(1L);
+        assertThat(found.get().getCreatedDate()).isNotNull();
+        assertThat(cardRepository.findByCardHash(hash("hash-bulk-1"))).isPresent();
+    }
+
+    @Test
+    void write_allowsCardsWithoutBatch() {
+        CardStatus cardStatus = em.find(CardStatus.class, 1L);
+
+        cardBulkWriter.write(List.of(new Card(hash("hash-no-batch"), "3333", cardStatus)));
+        em.clear();
+
+        Optional<Card> found = cardRepository.findByCardHash(hash("hash-no-batch"));
+
+        assertThat(found).isPresent();
+        assertThat(found.get().getBatch()).isNull();
+    }
+
+    @Test
+    void write_skipsCardsWhoseHashAlreadyExists_andKeepsOriginalRow() {
+        CardStatus cardStatus = em.find(CardStatus.class, 1L);
+        Card original = cardRepository.saveAndFlush(new Card(hash("hash-dup"), "1111", cardStatus));
+
+        cardBulkWriter.write(List.of(
+                new Card(hash("hash-dup"), "9999", cardStatus),
+                new Card(hash("hash-fresh"), "2222", cardStatus)));
+        em.clear();
+
+        Optional<Card> found = cardRepository.findByCardHash(hash("hash-dup"));
+
+        assertThat(found).isPresent();
+        assertThat(found.get().getId()).isEqualTo(original.getId());
+        assertThat(found.get().getCardLast4()).isEqualTo("1111");
+        assertThat(cardRepository.findByCardHash(hash("hash-fresh"))).isPresent();
+    }
+
+    @Test
+    void write_insertsCardRepeatedInsideChunkOnlyOnce() {
+        CardStatus cardStatus = em.find(CardStatus.class, 1L);
+        long before = cardRepository.count();
+
+        cardBulkWriter.write(List.of(
+                new Card(hash("hash-twice"), "1111", cardStatus),
+                new Card(hash("hash-twice"), "1111", cardStatus)));
+
+        assertThat(cardRepository.count()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void write_failsOnConstraintsOtherThanTheCardHash() {
+        CardStatus cardStatus = em.find(CardStatus.class, 1L);
+        Batch missingBatch = new Batch("bulk-file.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 1);
+        missingBatch.setBatchId(UUID.randomUUID());
+
+        Card orphan = new Card(hash("hash-orphan"), "1111", cardStatus);
+        orphan.setBatch(missingBatch);
+        Card withoutLast4 = new Card(hash("hash-no-last4"), null, cardStatus);
+
+        assertThatThrownBy(() -> cardBulkWriter.write(List.of(orphan)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> cardBulkWriter.write(List.of(withoutLast4)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void write_doesNothing_whenListIsEmpty() {
+        long before = cardRepository.count();
+
+        cardBulkWriter.write(List.of());
+
+        assertThat(cardRepository.count()).isEqualTo(before);
+    }
+
+    // card_hash is binary(32), so test cards need real 64-character hex hashes
+    private static String hash(String seed) {
+        return new CardHasher("test").hash(seed);
+    }
+}
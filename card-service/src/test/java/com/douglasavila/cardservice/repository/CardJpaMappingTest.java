@@ -1,14 +1,18 @@
 package com.douglasavila.cardservice.repository;
 
 import com.douglasavila.cardservice.entity.*;
+import com.douglasavila.cardservice.util.CardHasher;
 import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.test.context.ActiveProfiles;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
@@ -27,13 +31,14 @@ class CardJpaMappingTest {
     void save_persistsCard_andGeneratesUuid_andSetsCreatedDate() {
         CardStatus status = em.find(CardStatus.class, 1L);
 
-        Card card = new Card("hash-1", "1234", status);
+        Card card = new Card(hash("hash-1"), "1234", status);
 
         Card saved = cardRepository.saveAndFlush(card);
 
         assertThat(saved.getId()).isNotNull();
+        assertThat(saved.getId().version()).isEqualTo(7);
         assertThat(saved.getCreatedDate()).isNotNull();
-        assertThat(saved.getCardHash()).isEqualTo("hash-1");
+        assertThat(saved.getCardHash()).isEqualTo(hash("hash-1"));
         assertThat(saved.getCardLast4()).isEqualTo("1234");
         assertThat(saved.getCardStatus()).isNotNull();
     }
@@ -42,10 +47,10 @@ class CardJpaMappingTest {
     void save_enforcesUniqueConstraint_onCardHash() {
         CardStatus status = em.find(CardStatus.class, 1L);
 
-        cardRepository.saveAndFlush(new Card("hash-unique", "1111", status));
+        cardRepository.saveAndFlush(new Card(hash("hash-unique"), "1111", status));
 
         assertThatThrownBy(() ->
-                cardRepository.saveAndFlush(new Card("hash-unique", "2222", status))
+                cardRepository.saveAndFlush(new Card(hash("hash-unique"), "2222", status))
         ).isInstanceOf(DataIntegrityViolationException.class);
     }
 
@@ -57,7 +62,7 @@ class CardJpaMappingTest {
         assertThatThrownBy(() -> cardRepository.saveAndFlush(missingHash))
                 .isInstanceOf(DataIntegrityViolationException.class);
 
-        Card missingLast4 = new Card("hash-x", null, status);
+        Card missingLast4 = new Card(hash("hash-x"), null, status);
         assertThatThrownBy(() -> cardRepository.saveAndFlush(missingLast4))
                 .isInstanceOf(DataIntegrityViolationException.class);
     }
@@ -72,7 +77,7 @@ class CardJpaMappingTest {
 
         CardStatus cardStatus = em.find(CardStatus.class, 1L);
 
-        Card card = new Card("hash-batch", "9999", cardStatus);
+        Card card = new Card(hash("hash-batch"), "9999", cardStatus);
         card.setBatch(batch);
         card.setBatchSequenceNumber("1");
 
@@ -88,7 +93,7 @@ class CardJpaMappingTest {
         long before = ((Number) em.createQuery("select count(cs) from CardStatus cs").getSingleResult()).longValue();
 
         CardStatus status = em.find(CardStatus.class, 1L);
-        Card card = new Card("hash-status", "0000", status);
+        Card card = new Card(hash("hash-status"), "0000", status);
         cardRepository.saveAndFlush(card);
 
         long after = ((Number) em.createQuery("select count(cs) from CardStatus cs").getSingleResult()).longValue();
@@ -99,18 +104,71 @@ class CardJpaMappingTest {
     @Test
     void findByCardHash_returnsMatch_whenExists() {
         CardStatus status = em.find(CardStatus.class, 1L);
-        Card saved = cardRepository.saveAndFlush(new Card("hash-find", "5555", status));
+        Card saved = cardRepository.saveAndFlush(new Card(hash("hash-find"), "5555", status));
 
-        Optional<Card> found = cardRepository.findByCardHash("hash-find");
+        Optional<Card> found = cardRepository.findByCardHash(hash("hash-find"));
 
         assertThat(found).isPresent();
         assertThat(found.get().getId()).isEqualTo(saved.getId());
     }
 
+    @Test
+    void save_storesCardHashAsRaw32Bytes_andReadsBackHex() {
+        CardStatus status = em.find(CardStatus.class, 1L);
+        Card saved = cardRepository.saveAndFlush(new Card(hash("hash-binary"), "5555", status));
+        em.clear();
+
+        Object stored = em.createNativeQuery("select card_hash from cards where card_id = :id")
+                .setParameter("id", saved.getId())
+                .getSingleResult();
+
+        assertThat(stored).isInstanceOf(byte[].class);
+        assertThat((byte[]) stored).hasSize(32);
+        assertThat(cardRepository.findById(saved.getId()).orElseThrow().getCardHash()).isEqualTo(hash("hash-binary"));
+    }
+
     @Test
     void findByCardHash_returnsEmpty_whenMissing() {
-        Optional<Card> found = cardRepository.findByCardHash("does-not-exist");
+        Optional<Card> found = cardRepository.findByCardHash(hash("does-not-exist"));
 
         assertThat(found).isEmpty();
     }
+
+    @Test
+    void findCardIdsByCardHashIn_returnsIdsOfExistingHashesOnly() {
+        CardStatus status = em.find(CardStatus.class, 1L);
+        Card first = cardRepository.saveAndFlush(new Card(hash("hash-in-1"), "1111", status));
+        Card second = cardRepository.saveAndFlush(new Card(hash("hash-in-2"), "2222", status));
+        em.clear();
+
+        List<CardIdByHash> found = cardRepository.findCardIdsByCardHashIn(
+                List.of(hash("hash-in-1"), hash("hash-in-2"), hash("hash-in-missing")));
+
+        assertThat(found).containsExactlyInAnyOrder(
+                new CardIdByHash(hash("hash-in-1"), first.getId()),
+                new CardIdByHash(hash("hash-in-2"), second.getId()));
+    }
+
+    @Test
+    void findCardHashPages_walkEveryCardOnce_inKeysetPages() {
+        CardStatus status = em.find(CardStatus.class, 1L);
+        List<String> saved = List.of(hash("page-1"), hash("page-2"), hash("page-3"));
+        saved.forEach(cardHash -> cardRepository.saveAndFlush(new Card(cardHash, "1111", status)));
+        em.clear();
+
+        List<String> walked = new ArrayList<>();
+        List<CardIdByHash> page = cardRepository.findCardHashPage(Limit.of(2));
+        while (!page.isEmpty()) {
+            assertThat(page).hasSizeLessThanOrEqualTo(2);
+            page.forEach(card -> walked.add(card.cardHash()));
+            page = cardRepository.findCardHashPageAfter(page.getLast().cardId(), Limit.of(2));
+        }
+
+        assertThat(walked).doesNotHaveDuplicates().containsAll(saved);
+    }
+
+    // card_hash is binary(32), so test cards need real 64-character hex hashes
+    private static String hash(String seed) {
+        return new CardHasher("test").hash(seed);
+    }
 }
@@ -0,0 +1,217 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Batch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.awaitility.Awaitility.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchIngestJobsTest {
+
+    private static final String CONTENT = "DESAFIO-HYPERATIVA           20180524LOTE0001000010\n";
+
+    @Mock private CardBatchIngestService ingestService;
+
+    @TempDir private Path spoolDir;
+
+    private BatchIngestJobs jobs;
+
+    @AfterEach
+    void tearDown() {
+        if (jobs != null) jobs.stop();
+    }
+
+    @Test
+    void submit_returnsBatchIdBeforeIngestion_andDeletesSpoolFileAfterwards() throws Exception {
+        jobs = jobs(1, 0);
+        Batch batch = batch();
+        List<String> ingestedContent = new ArrayList<>();
+        CountDownLatch ingested = new CountDownLatch(1);
+
+        when(ingestService.startFile(any(), eq(StandardCharsets.UTF_8))).thenReturn(Optional.of(batch));
+        doAnswer(inv -> {
+            ingestedContent.add(Files.readString(inv.getArgument(0)));
+            ingested.countDown();
+            return null;
+        }).when(ingestService).ingestStartedFile(any(), eq(StandardCharsets.UTF_8), same(batch));
+
+        Optional<UUID> batchId = jobs.submit(input(), StandardCharsets.UTF_8);
+
+        assertThat(batchId).contains(batch.getBatchId());
+        assertThat(ingested.await(5, TimeUnit.SECONDS)).isTrue();
+        jobs.stop();
+
+        assertThat(ingestedContent).containsExactly(CONTENT);
+        assertThat(entries(spoolDir)).isEmpty();
+    }
+
+    @Test
+    void submit_rejects_whenEveryWorkerAndQueueSlotIsTaken() throws Exception {
+        jobs = jobs(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(ingestService.startFile(any(), any())).thenAnswer(inv -> Optional.of(batch()));
+        doAnswer(inv -> {
+            release.await();
+            return null;
+        }).when(ingestService).ingestStartedFile(any(), any(), any());
+
+        jobs.submit(input(), StandardCharsets.UTF_8);
+        jobs.submit(input(), StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> jobs.submit(input(), StandardCharsets.UTF_8))
+                .isInstanceOf(RejectedExecutionException.class);
+        verify(ingestService, times(2)).startFile(any(), any());
+
+        release.countDown();
+    }
+
+    @Test
+    void submit_returnsEmpty_andDeletesSpoolFile_whenBatchWasAlreadyProcessed() throws Exception {
+        jobs = jobs(1, 0);
+        when(ingestService.startFile(any(), any())).thenReturn(Optional.empty());
+
+        assertThat(jobs.submit(input(), StandardCharsets.UTF_8)).isEmpty();
+        assertThat(jobs.submit(input(), StandardCharsets.UTF_8)).isEmpty();
+
+        verify(ingestService, never()).ingestStartedFile(any(), any(), any());
+        assertThat(entries(spoolDir)).isEmpty();
+    }
+
+    @Test
+    void submit_movesJournalEntryToFailed_whenIngestionFails() throws Exception {
+        jobs = jobs(1, 0);
+        when(ingestService.startFile(any(), any())).thenReturn(Optional.of(batch()));
+        doThrow(new IllegalStateException("database down")).when(ingestService).ingestStartedFile(any(), any(), any());
+
+        jobs.submit(input(), StandardCharsets.UTF_8);
+        await().until(() -> entries(spoolDir.resolve("failed")).size() == 1);
+        jobs.stop();
+
+        assertThat(entries(spoolDir)).isEmpty();
+        assertThat(entries(spoolDir.resolve("failed"))).singleElement().satisfies(entry -> {
+            assertThat(entry.getFileName().toString()).endsWith(".UTF-8.batch");
+            assertThat(Files.readString(entry)).isEqualTo(CONTENT);
+        });
+    }
+
+    @Test
+    void stop_interruptsRunningIngestion_andKeepsItsEntryForTheNextStart() throws Exception {
+        jobs = jobs(1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+
+        when(ingestService.startFile(any(), any())).thenAnswer(inv -> Optional.of(batch()));
+        doAnswer(inv -> {
+            running.countDown();
+            new CountDownLatch(1).await();
+            return null;
+        }).when(ingestService).ingestStartedFile(any(), any(), any());
+
+        jobs.submit(input(), StandardCharsets.UTF_8);
+        jobs.submit(input(), StandardCharsets.UTF_8);
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long started = System.nanoTime();
+        jobs.stop();
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(5));
+        assertThat(entries(spoolDir)).hasSize(2);
+        verify(ingestService, times(1)).ingestStartedFile(any(), any(), any());
+    }
+
+    @Test
+    void start_restartsJournalEntries_andDropsUnacknowledgedParts() throws Exception {
+        Path first = Files.writeString(spoolDir.resolve(UUID.randomUUID() + ".UTF-8.batch"), CONTENT);
+        Path processed = Files.writeString(spoolDir.resolve(UUID.randomUUID() + ".ISO-8859-1.batch"), CONTENT);
+        Path part = Files.writeString(spoolDir.resolve(UUID.randomUUID() + ".part"), CONTENT);
+        Batch batch = batch();
+
+        when(ingestService.restartFile(first, StandardCharsets.UTF_8)).thenReturn(Optional.of(batch));
+        when(ingestService.restartFile(processed, StandardCharsets.ISO_8859_1)).thenReturn(Optional.empty());
+
+        jobs = jobs(1, 0);
+        await().until(() -> entries(spoolDir).isEmpty());
+        jobs.stop();
+
+        verify(ingestService).ingestStartedFile(first, StandardCharsets.UTF_8, batch);
+        verify(ingestService, never()).startFile(any(), any());
+        assertThat(first).doesNotExist();
+        assertThat(processed).doesNotExist();
+        assertThat(part).doesNotExist();
+    }
+
+    @Test
+    void start_movesEntryToFailed_whenItsHeaderCannotBeRead() throws Exception {
+        Path unreadable = Files.writeString(spoolDir.resolve(UUID.randomUUID() + ".UTF-8.batch"), "not a header\n");
+        when(ingestService.restartFile(unreadable, StandardCharsets.UTF_8))
+                .thenThrow(new IllegalArgumentException("Invalid header"));
+
+        jobs = jobs(1, 0);
+        await().until(() -> entries(spoolDir.resolve("failed")).size() == 1);
+        jobs.stop();
+
+        assertThat(unreadable).doesNotExist();
+        assertThat(spoolDir.resolve("failed").resolve(unreadable.getFileName())).hasContent("not a header");
+        verify(ingestService, never()).ingestStartedFile(any(), any(), any());
+    }
+
+    @Test
+    void start_fails_whenEnabledWithoutSpoolDir() {
+        BatchIngestJobs unspooled = new BatchIngestJobs(ingestService, true, 1, 0, "");
+
+        assertThatThrownBy(unspooled::start)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("card.ingest.spool-dir");
+        assertThat(unspooled.isRunning()).isFalse();
+
+        BatchIngestJobs disabled = new BatchIngestJobs(ingestService, false, 1, 0, "");
+        disabled.start();
+        assertThat(disabled.isRunning()).isFalse();
+    }
+
+    private BatchIngestJobs jobs(int threads, int queueCapacity) {
+        BatchIngestJobs started = new BatchIngestJobs(ingestService, true, threads, queueCapacity, spoolDir.toString());
+        started.start();
+        return started;
+    }
+
+    // Regular files only, so the failed/ directory is not listed as an entry
+    private static List<Path> entries(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static Batch batch() {
+        Batch batch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 10);
+        batch.setBatchId(UUID.randomUUID());
+        return batch;
+    }
+
+    private static ByteArrayInputStream input() {
+        return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+    }
+}
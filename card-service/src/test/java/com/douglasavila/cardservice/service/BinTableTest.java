@@ -0,0 +1,115 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.util.BinRangeIndex;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BinTableTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reload_swapsInChangedTable_andKeepsPreviousOneWhenInvalid() throws IOException {
+        Path file = dir.resolve("bins.csv");
+        Files.writeString(file, "411111,VISA,Old Bank\n");
+        BinTable table = new BinTable(new SimpleMeterRegistry(), file.toString(), Duration.ofHours(1));
+
+        table.start();
+        try {
+            BinRangeIndex loaded = table.current();
+            assertThat(loaded.find("4111111111111111").issuer()).isEqualTo("Old Bank");
+
+            table.reload();
+            assertThat(table.current()).isSameAs(loaded);
+
+            replace(file, "411111,VISA,New Bank\n422222,VISA,Other Bank\n");
+            table.reload();
+            assertThat(table.current().find("4111111111111111").issuer()).isEqualTo("New Bank");
+            assertThat(table.current().size()).isEqualTo(2);
+
+            replace(file, "not a bin table\n");
+            assertThatThrownBy(table::reload).isInstanceOf(IllegalArgumentException.class);
+            assertThat(table.current().find("4111111111111111").issuer()).isEqualTo("New Bank");
+        } finally {
+            table.stop();
+        }
+    }
+
+    @Test
+    void start_leavesTableEmpty_withoutPath_andFails_whenFileIsMissing() {
+        BinTable disabled = new BinTable(new SimpleMeterRegistry(), "", Duration.ofSeconds(30));
+        disabled.start();
+
+        assertThat(disabled.isRunning()).isFalse();
+        assertThat(disabled.current()).isSameAs(BinRangeIndex.EMPTY);
+
+        BinTable missing = new BinTable(new SimpleMeterRegistry(), dir.resolve("missing.csv").toString(), Duration.ofSeconds(30));
+
+        assertThatThrownBy(missing::start).isInstanceOf(IllegalStateException.class);
+        assertThat(missing.isRunning()).isFalse();
+    }
+
+    @Test
+    void start_loadsTableBeforeIngestionLifecyclesStart() throws IOException {
+        Path file = dir.resolve("bins.csv");
+        Files.writeString(file, "411111,VISA,Test Bank\n");
+        List<Integer> rangesSeenByIngestion = new ArrayList<>();
+
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+            // Registered ahead of the table, so only its phase can start the table first
+            context.registerBean("ingestion", SmartLifecycle.class, () -> new SmartLifecycle() {
+                private boolean running;
+
+                @Override
+                public void start() {
+                    rangesSeenByIngestion.add(context.getBean(BinTable.class).current().size());
+                    running = true;
+                }
+
+                @Override
+                public void stop() {
+                    running = false;
+                }
+
+                @Override
+                public boolean isRunning() {
+                    return running;
+                }
+            });
+            context.registerBean(BinTable.class, () ->
+                    new BinTable(context.getBean(MeterRegistry.class), file.toString(), Duration.ofHours(1)));
+            context.refresh();
+        }
+
+        assertThat(rangesSeenByIngestion).containsExactly(1);
+
+        CardBatchIngestService ingestService = mock(CardBatchIngestService.class);
+        assertThat(BinTable.PHASE)
+                .isLessThan(new DropFolderIngestion(ingestService, "", 1, StandardCharsets.UTF_8).getPhase())
+                .isLessThan(new BatchIngestJobs(ingestService, false, 1, 0, "").getPhase());
+    }
+
+    private void replace(Path file, String table) throws IOException {
+        Path next = dir.resolve("bins.csv.next");
+        Files.writeString(next, table);
+        Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -3,19 +3,29 @@ package com.douglasavila.cardservice.service;
 import com.douglasavila.cardservice.entity.*;
 import com.douglasavila.cardservice.repository.*;
 import com.douglasavila.cardservice.util.BatchParser;
+import com.douglasavila.cardservice.util.CardHasher;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -24,16 +34,21 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class CardBatchIngestServiceTest {
 
-    @Mock private CardRepository cardRepository;
-    @Mock private CardStatusRepository cardStatusRepository;
     @Mock private BatchRepository batchRepository;
-    @Mock private BatchStatusRepository batchStatusRepository;
+    @Mock private StatusRegistry statusRegistry;
     @Mock private BatchParser batchParser;
+    @Mock private CardBulkWriter cardBulkWriter;
+    @Mock private CardLookupService cardLookupService;
+    @Mock private PlatformTransactionManager transactionManager;
 
-    @InjectMocks private CardBatchIngestService service;
+    private CardBatchIngestService service;
+
+    @TempDir private Path tempDir;
 
     @Captor private ArgumentCaptor<Batch> batchCaptor;
-    @Captor private ArgumentCaptor<Card> cardCaptor;
+    @Captor private ArgumentCaptor<List<Card>> chunkCaptor;
+
+    private static final CardHasher HASHER = new CardHasher("test");
 
     private static final String HEADER =
             "DESAFIO-HYPERATIVA           20180524LOTE0001000010";
@@ -41,6 +56,13 @@ class CardBatchIngestServiceTest {
     private static final String TRAILER =
             "LOTE0001000010                                        ";
 
+    @BeforeEach
+    void setUp() {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 1000, 4);
+        stubByteLinesToStringParser();
+    }
+
     @Test
     void ingest_returnsEarly_whenExistingBatchIsNotFailedOrPartiallyProcessed() throws Exception {
         Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 10);
@@ -56,12 +78,12 @@ class CardBatchIngestServiceTest {
 
         when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
 
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.RECEIVED.name())).thenReturn(received);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PROCESSED.name())).thenReturn(processed);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name())).thenReturn(partially);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.FAILED.name())).thenReturn(failed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(received);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(processed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(partially);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(failed);
 
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.name())).thenReturn(cardStatus("VALID"));
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(cardStatus("VALID"));
 
         when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
                 .thenReturn(Optional.of(existing));
@@ -75,8 +97,7 @@ class CardBatchIngestServiceTest {
         service.ingest(in, StandardCharsets.UTF_8);
 
         verify(batchRepository, never()).save(any(Batch.class));
-        verify(cardRepository, never()).save(any(Card.class));
-        verify(cardRepository, never()).findByCardHash(anyString());
+        verifyNoInteractions(cardBulkWriter);
         verify(batchParser, never()).parseCardLines(anyString());
     }
 
@@ -98,25 +119,22 @@ class CardBatchIngestServiceTest {
 
         when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
 
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.RECEIVED.name())).thenReturn(received);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PROCESSED.name())).thenReturn(processed);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name())).thenReturn(partially);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.FAILED.name())).thenReturn(failed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(received);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(processed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(partially);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(failed);
 
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.name())).thenReturn(valid);
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(valid);
 
         when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
                 .thenReturn(Optional.of(existing));
 
-        Card card1 = card("hash-1", "9999");
-        Card card2 = card("hash-2", "6999");
+        Card card1 = card(hash("hash-1"), "9999");
+        Card card2 = card(hash("hash-2"), "6999");
 
         when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card1));
         when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card2));
 
-        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.empty());
-        when(cardRepository.findByCardHash("hash-2")).thenReturn(Optional.empty());
-
         ByteArrayInputStream in = new ByteArrayInputStream(("""
                 %s
                 C1     4456897922969999
@@ -135,11 +153,12 @@ class CardBatchIngestServiceTest {
         assertThat(savedBatch.getBatchStatus()).isNotNull();
         assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
 
-        verify(cardRepository, times(2)).save(cardCaptor.capture());
-        assertThat(cardCaptor.getAllValues()).allSatisfy(c -> {
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).hasSize(2).allSatisfy(c -> {
             assertThat(c.getBatch()).isSameAs(newBatch);
             assertThat(c.getCardStatus()).isSameAs(valid);
         });
+        verify(cardLookupService).invalidate(List.of(hash("hash-1"), hash("hash-2")));
     }
 
     @Test
@@ -153,25 +172,22 @@ class CardBatchIngestServiceTest {
 
         when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
 
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.RECEIVED.name())).thenReturn(received);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PROCESSED.name())).thenReturn(processed);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name())).thenReturn(partially);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.FAILED.name())).thenReturn(failed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(received);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(processed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(partially);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(failed);
 
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.name())).thenReturn(cardStatus("VALID"));
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(cardStatus("VALID"));
 
         when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
                 .thenReturn(Optional.empty());
 
-        Card card1 = card("hash-1", "9999");
-        Card card2 = card("hash-2", "6999");
+        Card card1 = card(hash("hash-1"), "9999");
+        Card card2 = card(hash("hash-2"), "6999");
 
         when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card1));
         when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card2));
 
-        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.empty());
-        when(cardRepository.findByCardHash("hash-2")).thenReturn(Optional.empty());
-
         ByteArrayInputStream in = new ByteArrayInputStream(("""
                 %s
                 C1     4456897922969999
@@ -190,7 +206,7 @@ class CardBatchIngestServiceTest {
     }
 
     @Test
-    void ingest_doesNotSaveCard_whenAlreadyExists_butCountsRecord() throws Exception {
+    void ingest_leavesExistingCardToWriter_withoutLookingItUp_andCountsRecord() throws Exception {
         Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
 
         BatchStatus received = status("RECEIVED");
@@ -202,25 +218,22 @@ class CardBatchIngestServiceTest {
 
         when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
 
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.RECEIVED.name())).thenReturn(received);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PROCESSED.name())).thenReturn(processed);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name())).thenReturn(partially);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.FAILED.name())).thenReturn(failed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(received);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(processed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(partially);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(failed);
 
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.name())).thenReturn(valid);
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(valid);
 
         when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
                 .thenReturn(Optional.empty());
 
-        Card card1 = card("hash-existing", "9999");
-        Card card2 = card("hash-new", "6999");
+        Card card1 = card(hash("hash-existing"), "9999");
+        Card card2 = card(hash("hash-new"), "6999");
 
         when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card1));
         when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card2));
 
-        when(cardRepository.findByCardHash("hash-existing")).thenReturn(Optional.of(new Card()));
-        when(cardRepository.findByCardHash("hash-new")).thenReturn(Optional.empty());
-
         ByteArrayInputStream in = new ByteArrayInputStream(("""
                 %s
                 C1     4456897922969999
@@ -230,8 +243,8 @@ class CardBatchIngestServiceTest {
 
         service.ingest(in, StandardCharsets.UTF_8);
 
-        verify(cardRepository, times(1)).save(cardCaptor.capture());
-        assertThat(cardCaptor.getValue().getCardHash()).isEqualTo("hash-new");
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).extracting(Card::getCardHash).containsExactly(hash("hash-existing"), hash("hash-new"));
 
         verify(batchRepository, times(2)).save(batchCaptor.capture());
         Batch savedBatch = batchCaptor.getValue();
@@ -254,21 +267,20 @@ class CardBatchIngestServiceTest {
 
         when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
 
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.RECEIVED.name())).thenReturn(received);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PROCESSED.name())).thenReturn(processed);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.PARTIALLY_PROCESSED.name())).thenReturn(partially);
-        when(batchStatusRepository.findByBatchStatusName(BatchStatus.Values.FAILED.name())).thenReturn(failed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(received);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(processed);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(partially);
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(failed);
 
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.name())).thenReturn(valid);
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(valid);
 
         when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
                 .thenReturn(Optional.empty());
 
         when(batchParser.parseCardLines("C0     INVALID")).thenReturn(Optional.empty());
 
-        Card card1 = card("hash-1", "9999");
+        Card card1 = card(hash("hash-1"), "9999");
         when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card1));
-        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.empty());
 
         ByteArrayInputStream in = new ByteArrayInputStream(("""
                 %s
@@ -281,7 +293,8 @@ class CardBatchIngestServiceTest {
 
         service.ingest(in, StandardCharsets.UTF_8);
 
-        verify(cardRepository, times(1)).save(any(Card.class));
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).hasSize(1);
         verify(batchRepository, times(2)).save(batchCaptor.capture());
 
         Batch savedBatch = batchCaptor.getValue();
@@ -292,6 +305,539 @@ class CardBatchIngestServiceTest {
         verify(batchParser, never()).parseCardLines("C9     4456897999099999");
     }
 
+    @Test
+    void ingest_writesCardsInChunksOfConfiguredSize() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 2, 4);
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 3);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card(hash("hash-2"), "9999")));
+        when(batchParser.parseCardLines("C3     4456897998199999")).thenReturn(Optional.of(card(hash("hash-3"), "9999")));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                C3     4456897998199999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        service.ingest(in, StandardCharsets.UTF_8);
+
+        verify(cardBulkWriter, times(2)).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getAllValues().get(0)).extracting(Card::getCardHash).containsExactly(hash("hash-1"), hash("hash-2"));
+        assertThat(chunkCaptor.getAllValues().get(1)).extracting(Card::getCardHash).containsExactly(hash("hash-3"));
+
+        InOrder inOrder = inOrder(cardBulkWriter, batchRepository, transactionManager);
+        inOrder.verify(cardBulkWriter).write(anyList());
+        inOrder.verify(batchRepository).updateProgress(any(), eq(2), eq(0), any(), anyLong());
+        inOrder.verify(transactionManager).commit(any());
+        inOrder.verify(cardBulkWriter).write(anyList());
+        inOrder.verify(batchRepository).updateProgress(any(), eq(3), eq(0), any(), anyLong());
+        inOrder.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void ingest_marksBatchFailed_withCommittedRecords_whenProcessingStopsHalfway() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 1, 4);
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenThrow(new IllegalStateException("boom"));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> service.ingest(in, StandardCharsets.UTF_8))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+
+        verify(cardBulkWriter, times(1)).write(anyList());
+        verify(batchRepository).updateProgress(any(), eq(1), eq(0), any(), anyLong());
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(1);
+        assertThat(savedBatch.getProcessingDate()).isNull();
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("FAILED");
+    }
+
+    @Test
+    void ingest_countsRepeatedCard_andSkipsItBeforeWriter() throws Exception {
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines("C1     4456897999999999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897999999999
+                C2     4456897999999999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        service.ingest(in, StandardCharsets.UTF_8);
+
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).extracting(Card::getCardHash).containsExactly(hash("hash-1"));
+        verify(batchRepository).updateProgress(any(), eq(2), eq(1), any(), anyLong());
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        assertThat(batchCaptor.getValue().getProcessedRecords()).isEqualTo(2);
+        assertThat(batchCaptor.getValue().getDuplicateRecords()).isEqualTo(1);
+    }
+
+    @Test
+    void ingest_recordsCheckpointOfLastCommittedCard_andClearsItWhenDone() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 1, 4);
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 1);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        Card card1 = card(hash("hash-1"), "9999");
+        card1.setBatchSequenceNumber("1");
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card1));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897922969999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        service.ingest(in, StandardCharsets.UTF_8);
+
+        long offsetAfterC1 = (HEADER + "\nC1     4456897922969999\n").length();
+        verify(batchRepository).updateProgress(any(), eq(1), eq(0), eq("1"), eq(offsetAfterC1));
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+        assertThat(savedBatch.getCheckpointOffset()).isNull();
+        assertThat(savedBatch.getLastSequenceNumber()).isNull();
+    }
+
+    @Test
+    void ingest_resumesFailedBatchFromCheckpoint_withoutReparsingCommittedLines() throws Exception {
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+
+        long offsetAfterC1 = (HEADER + "\nC1     4456897922969999\n").length();
+
+        UUID existingId = UUID.randomUUID();
+        Batch existing = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+        existing.setBatchId(existingId);
+        existing.setBatchStatus(status("FAILED"));
+        existing.setProcessedRecords(1);
+        existing.setLastSequenceNumber("1");
+        existing.setCheckpointOffset(offsetAfterC1);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(existing));
+
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card(hash("hash-2"), "9999")));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        service.ingest(in, StandardCharsets.UTF_8);
+
+        verify(batchParser, never()).parseCardLines("C1     4456897922969999");
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).extracting(Card::getCardHash).containsExactly(hash("hash-2"));
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getBatchId()).isEqualTo(existingId);
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(2);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+    }
+
+    @Test
+    void ingest_restartsFromFirstLine_whenCheckpointBelongsToDifferentHeader() throws Exception {
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 1);
+
+        Batch existing = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 5);
+        existing.setBatchId(UUID.randomUUID());
+        existing.setBatchStatus(status("FAILED"));
+        existing.setProcessedRecords(3);
+        existing.setCheckpointOffset(10_000L);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(existing));
+
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+
+        ByteArrayInputStream in = new ByteArrayInputStream(("""
+                %s
+                C1     4456897922969999
+                %s
+                """.formatted(HEADER, TRAILER)).getBytes(StandardCharsets.UTF_8));
+
+        service.ingest(in, StandardCharsets.UTF_8);
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(1);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+    }
+
+    @Test
+    void ingestFile_skipsCardsRepeatedAcrossRanges_andCountsThemAsDuplicates() throws Exception {
+        int cardCount = 20_000;
+        Path file = tempDir.resolve("cards.txt");
+
+        // Every card number appears twice, far enough apart to land in different ranges
+        StringBuilder content = new StringBuilder(HEADER).append('\n');
+        for (int i = 1; i <= cardCount; i++) {
+            content.append("C%-6d%016d\n".formatted(i, i % (cardCount / 2)));
+        }
+        content.append(TRAILER).append('\n');
+        Files.writeString(file, content);
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", cardCount);
+        newBatch.setBatchId(UUID.randomUUID());
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines(startsWith("C")))
+                .thenAnswer(inv -> Optional.of(card(hash(inv.<String>getArgument(0).substring(7)), "9999")));
+
+        service.ingestFile(file, StandardCharsets.UTF_8);
+
+        verify(cardBulkWriter, atLeastOnce()).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getAllValues().stream().flatMap(List::stream).map(Card::getCardHash))
+                .hasSize(cardCount / 2)
+                .doesNotHaveDuplicates();
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(cardCount);
+        assertThat(savedBatch.getDuplicateRecords()).isEqualTo(cardCount / 2);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+    }
+
+    @Test
+    void ingestFile_parsesRangesInParallel_andCountsEveryCardUpToTrailer() throws Exception {
+        int cardCount = 60_000;
+        Path file = tempDir.resolve("cards.txt");
+
+        StringBuilder content = new StringBuilder(HEADER).append('\n');
+        for (int i = 1; i <= cardCount; i++) {
+            content.append("C%-6d4456897922969999                         \n".formatted(i));
+        }
+        content.append(TRAILER).append('\n');
+        content.append("C9     4456897999099999\n");
+        Files.writeString(file, content);
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", cardCount);
+        newBatch.setBatchId(UUID.randomUUID());
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines(startsWith("C"))).thenAnswer(inv -> Optional.of(card(hash(inv.getArgument(0)), "9999")));
+
+        service.ingestFile(file, StandardCharsets.UTF_8);
+
+        assertThat(Files.size(file)).isGreaterThan(2L << 20);
+        verify(batchParser, times(cardCount)).parseCardLines(anyString());
+        verify(batchParser, never()).parseCardLines("C9     4456897999099999");
+
+        ArgumentCaptor<Integer> counts = ArgumentCaptor.forClass(Integer.class);
+        verify(batchRepository, atLeast(2)).addProcessedRecords(eq(newBatch.getBatchId()), counts.capture(), eq(0));
+        assertThat(counts.getAllValues().stream().mapToInt(Integer::intValue).sum()).isEqualTo(cardCount);
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(cardCount);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+        assertThat(savedBatch.getCheckpointOffset()).isNull();
+    }
+
+    @Test
+    void ingestFile_marksBatchFailed_withCommittedRecords_whenARangeFails() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 1, 4);
+
+        Path file = tempDir.resolve("cards.txt");
+        Files.writeString(file, """
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                %s
+                """.formatted(HEADER, TRAILER));
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenThrow(new IllegalStateException("boom"));
+
+        assertThatThrownBy(() -> service.ingestFile(file, StandardCharsets.UTF_8))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(1);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("FAILED");
+    }
+
+    @Test
+    void ingestFile_marksBatchFailed_onlyAfterRangesStillRunningHaveCommitted() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 100_000, 4);
+
+        // Over the smallest range, so the body is split into two ranges
+        int cardCount = 45_000;
+        StringBuilder lines = new StringBuilder(HEADER).append('\n');
+        for (int i = 0; i < cardCount; i++) {
+            lines.append("C%07d 4456897922969999%n".formatted(i));
+        }
+        Path file = tempDir.resolve("cards.txt");
+        Files.writeString(file, lines.append(TRAILER).append('\n'));
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", cardCount);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.empty());
+
+        // The first range is still parsing when the last one fails
+        CountDownLatch lastRangeFailed = new CountDownLatch(1);
+        String firstLine = "C0000000 4456897922969999";
+        String lastLine = "C%07d 4456897922969999".formatted(cardCount - 1);
+        when(batchParser.parseCardLines(anyString())).thenAnswer(inv -> {
+            String line = inv.getArgument(0);
+            if (line.equals(lastLine)) {
+                lastRangeFailed.countDown();
+                throw new IllegalStateException("boom");
+            }
+            if (line.equals(firstLine)) {
+                lastRangeFailed.await(5, TimeUnit.SECONDS);
+                Thread.sleep(200);
+            }
+            return Optional.of(card(hash(line), "9999"));
+        });
+
+        AtomicInteger committedRecords = new AtomicInteger();
+        lenient().doAnswer(inv -> committedRecords.addAndGet(inv.getArgument(1)))
+                .when(batchRepository).addProcessedRecords(any(), anyInt(), anyInt());
+
+        AtomicInteger failedRecords = new AtomicInteger(-1);
+        doAnswer(inv -> {
+            Batch saved = inv.getArgument(0);
+            if (saved.getBatchStatus().getBatchStatusName().equals("FAILED")) {
+                failedRecords.set(saved.getProcessedRecords());
+            }
+            return saved;
+        }).when(batchRepository).save(any());
+
+        assertThatThrownBy(() -> service.ingestFile(file, StandardCharsets.UTF_8))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+
+        // With a single worker the first range sees the failure before it parses; with more it commits first
+        assertThat(failedRecords.get()).isEqualTo(committedRecords.get());
+    }
+
+    @Test
+    void ingestFile_resumesFromCheckpointOfStreamedRun() throws Exception {
+        Path file = tempDir.resolve("cards.txt");
+        Files.writeString(file, """
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                %s
+                """.formatted(HEADER, TRAILER));
+
+        Batch newBatch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+
+        Batch existing = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+        existing.setBatchId(UUID.randomUUID());
+        existing.setBatchStatus(status("FAILED"));
+        existing.setProcessedRecords(1);
+        existing.setLastSequenceNumber("1");
+        existing.setCheckpointOffset((long) (HEADER + "\nC1     4456897922969999\n").length());
+
+        when(batchParser.parseHeaderLine(HEADER)).thenReturn(newBatch);
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(existing));
+
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card(hash("hash-2"), "9999")));
+
+        service.ingestFile(file, StandardCharsets.UTF_8);
+
+        verify(batchParser, never()).parseCardLines("C1     4456897922969999");
+        verify(batchRepository).addProcessedRecords(existing.getBatchId(), 1, 0);
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch savedBatch = batchCaptor.getValue();
+        assertThat(savedBatch.getProcessedRecords()).isEqualTo(2);
+        assertThat(savedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+    }
+
+    @Test
+    void ingestFile_clearsCheckpoint_whenRunFromItFails_soResumeCountsEachRecordOnce() throws Exception {
+        service = new CardBatchIngestService(batchRepository, statusRegistry,
+                batchParser, cardBulkWriter, cardLookupService, transactionManager, 1, 4);
+
+        Path file = tempDir.resolve("cards.txt");
+        Files.writeString(file, """
+                %s
+                C1     4456897922969999
+                C2     4456897999999999
+                C3     4456897911111111
+                %s
+                """.formatted(HEADER, TRAILER));
+
+        Batch existing = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 3);
+        existing.setBatchId(UUID.randomUUID());
+        existing.setBatchStatus(status("FAILED"));
+        existing.setProcessedRecords(1);
+        existing.setDuplicateRecords(0);
+        existing.setLastSequenceNumber("1");
+        existing.setCheckpointOffset((long) (HEADER + "\nC1     4456897922969999\n").length());
+
+        when(batchParser.parseHeaderLine(HEADER)).thenAnswer(inv ->
+                new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 3));
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(existing));
+
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(card(hash("hash-1"), "9999")));
+        when(batchParser.parseCardLines("C2     4456897999999999")).thenReturn(Optional.of(card(hash("hash-2"), "9999")));
+        when(batchParser.parseCardLines("C3     4456897911111111"))
+                .thenThrow(new IllegalStateException("boom"))
+                .thenReturn(Optional.of(card(hash("hash-3"), "1111")));
+
+        assertThatThrownBy(() -> service.ingestFile(file, StandardCharsets.UTF_8))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("boom");
+
+        verify(batchRepository, times(2)).save(batchCaptor.capture());
+        Batch failedBatch = batchCaptor.getValue();
+        assertThat(failedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("FAILED");
+        assertThat(failedBatch.getProcessedRecords()).isEqualTo(2);
+        assertThat(failedBatch.getCheckpointOffset()).isNull();
+        assertThat(failedBatch.getLastSequenceNumber()).isNull();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(failedBatch));
+
+        service.ingestFile(file, StandardCharsets.UTF_8);
+
+        verify(batchRepository, times(4)).save(batchCaptor.capture());
+        Batch resumedBatch = batchCaptor.getValue();
+        assertThat(resumedBatch.getProcessedRecords()).isEqualTo(3);
+        assertThat(resumedBatch.getBatchStatus().getBatchStatusName()).isEqualTo("PROCESSED");
+    }
+
+    @Test
+    void restartFile_takesOverBatchLeftReceived_whichStartFileLeavesAlone() throws Exception {
+        Path file = tempDir.resolve("cards.txt");
+        Files.writeString(file, HEADER + "\n");
+
+        Batch existing = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2);
+        existing.setBatchId(UUID.randomUUID());
+        existing.setBatchStatus(status("RECEIVED"));
+        existing.setProcessedRecords(1);
+
+        when(batchParser.parseHeaderLine(HEADER)).thenAnswer(inv ->
+                new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 2));
+        stubStatuses();
+
+        when(batchRepository.findByBatchCodeAndFileName("LOTE0001", "DESAFIO-HYPERATIVA"))
+                .thenReturn(Optional.of(existing));
+
+        assertThat(service.startFile(file, StandardCharsets.UTF_8)).isEmpty();
+
+        Optional<Batch> restarted = service.restartFile(file, StandardCharsets.UTF_8);
+
+        assertThat(restarted).hasValueSatisfying(batch -> {
+            assertThat(batch.getBatchId()).isEqualTo(existing.getBatchId());
+            assertThat(batch.getProcessedRecords()).isZero();
+            assertThat(batch.getStartedDate()).isNotNull();
+        });
+        verify(batchRepository).save(restarted.get());
+    }
+
+    // Both ingestion paths hand raw line bytes to the parser; route them to the String stubs
+    private void stubByteLinesToStringParser() {
+        lenient().when(batchParser.parseCardLine(any(byte[].class), anyInt(), anyInt())).thenAnswer(inv -> {
+            byte[] line = inv.getArgument(0);
+            String decoded = new String(line, (int) inv.getArgument(1), (int) inv.getArgument(2), StandardCharsets.UTF_8);
+            return batchParser.parseCardLines(decoded).orElse(null);
+        });
+    }
+
+    // Each path only asks the registry for the statuses it ends up in
+    private void stubStatuses() {
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.RECEIVED)).thenReturn(status("RECEIVED"));
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PROCESSED)).thenReturn(status("PROCESSED"));
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.PARTIALLY_PROCESSED)).thenReturn(status("PARTIALLY_PROCESSED"));
+        lenient().when(statusRegistry.batchStatus(BatchStatus.Values.FAILED)).thenReturn(status("FAILED"));
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(cardStatus("VALID"));
+    }
+
     private static BatchStatus status(String name) {
         BatchStatus s = new BatchStatus();
         s.setBatchStatusName(name);
@@ -304,6 +850,10 @@ class CardBatchIngestServiceTest {
         return s;
     }
 
+    private static String hash(String seed) {
+        return HASHER.hash(seed);
+    }
+
     private static Card card(String hash, String last4) {
         Card c = new Card();
         c.setCardHash(hash);
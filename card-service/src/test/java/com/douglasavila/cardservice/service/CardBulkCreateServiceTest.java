@@ -0,0 +1,137 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.entity.CardStatus;
+import com.douglasavila.cardservice.repository.CardBulkWriter;
+import com.douglasavila.cardservice.util.CardHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardBulkCreateServiceTest {
+
+    private static final String NEW_PAN = "4111111111111111";
+    private static final String OTHER_NEW_PAN = "4456897999999999";
+    private static final String STORED_PAN = "4456897922969999";
+
+    private final CardHasher hasher = new CardHasher("test");
+
+    @Mock private CardLookupService cardLookupService;
+    @Mock private CardBulkWriter cardBulkWriter;
+    @Mock private StatusRegistry statusRegistry;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    @Captor private ArgumentCaptor<List<Card>> chunkCaptor;
+
+    private final CardStatus valid = new CardStatus();
+
+    @BeforeEach
+    void setUp() {
+        valid.setCardStatusName("VALID");
+    }
+
+    @Test
+    void create_writesOnlyNewCards_andReportsEachCardNumberInOrder() throws Exception {
+        stubStoredCards();
+
+        String output = create(service(1000), """
+                ["%s", "%s", "123", "%s"]
+                """.formatted(NEW_PAN, STORED_PAN, NEW_PAN));
+
+        assertThat(output).isEqualTo("""
+                {"status":"CREATED"}
+                {"status":"EXISTS"}
+                {"status":"INVALID"}
+                {"status":"EXISTS"}
+                """);
+
+        verify(cardBulkWriter).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getValue()).singleElement().satisfies(card -> {
+            assertThat(card.getCardHash()).isEqualTo(hasher.hash(NEW_PAN));
+            assertThat(card.getCardLast4()).isEqualTo("1111");
+            assertThat(card.getCardStatus()).isSameAs(valid);
+            assertThat(card.getBatch()).isNull();
+        });
+        verify(cardLookupService).invalidate(List.of(hasher.hash(NEW_PAN)));
+    }
+
+    @Test
+    void create_commitsEachChunkOnItsOwn() throws Exception {
+        stubStoredCards();
+
+        String output = create(service(2), """
+                "%s"
+                "%s"
+                "%s"
+                """.formatted(NEW_PAN, STORED_PAN, OTHER_NEW_PAN));
+
+        assertThat(output.lines()).containsExactly(
+                "{\"status\":\"CREATED\"}",
+                "{\"status\":\"EXISTS\"}",
+                "{\"status\":\"CREATED\"}");
+
+        verify(cardBulkWriter, times(2)).write(chunkCaptor.capture());
+        assertThat(chunkCaptor.getAllValues()).extracting(List::size).containsExactly(1, 1);
+        verify(transactionManager, times(2)).commit(any());
+    }
+
+    @Test
+    void create_writesNothing_whenNoCardNumberIsNew() throws Exception {
+        stubStoredCards();
+
+        String output = create(service(1000), """
+                ["%s", "not-a-card"]
+                """.formatted(STORED_PAN));
+
+        assertThat(output.lines()).containsExactly("{\"status\":\"EXISTS\"}", "{\"status\":\"INVALID\"}");
+        verifyNoInteractions(cardBulkWriter, transactionManager);
+        verify(cardLookupService, never()).invalidate(anyCollection());
+    }
+
+    private CardBulkCreateService service(int chunkSize) {
+        return new CardBulkCreateService(hasher, cardLookupService, cardBulkWriter, statusRegistry,
+                new BinTable(new SimpleMeterRegistry(), "", Duration.ofSeconds(30)), transactionManager,
+                JsonMapper.builder().build(), chunkSize, false);
+    }
+
+    private void stubStoredCards() {
+        lenient().when(statusRegistry.cardStatus(CardStatus.Values.VALID)).thenReturn(valid);
+        when(cardLookupService.findCardIds(anyCollection())).thenAnswer(inv -> {
+            Map<String, Optional<UUID>> cardIds = new HashMap<>();
+            for (String cardHash : inv.<Collection<String>>getArgument(0)) {
+                cardIds.put(cardHash, cardHash.equals(hasher.hash(STORED_PAN))
+                        ? Optional.of(UUID.randomUUID()) : Optional.empty());
+            }
+            return cardIds;
+        });
+    }
+
+    private static String create(CardBulkCreateService service, String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.create(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.util.CardHasher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardBulkLookupServiceTest {
+
+    private static final String FOUND_PAN = "4111111111111111";
+    private static final String MISSING_PAN = "4456897922969999";
+
+    private final CardHasher hasher = new CardHasher("test");
+
+    @Mock private CardLookupService cardLookupService;
+
+    private CardBulkLookupService service;
+
+    private final UUID foundId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        service = new CardBulkLookupService(hasher, cardLookupService, JsonMapper.builder().build(), 2, false);
+    }
+
+    @Test
+    void lookup_readsJsonArray_andWritesOneLinePerCardNumberInOrder() throws Exception {
+        stubLookups();
+
+        String output = lookup("""
+                ["%s", "123", "%s", "%s"]
+                """.formatted(MISSING_PAN, FOUND_PAN, MISSING_PAN));
+
+        assertThat(output).isEqualTo("""
+                {"status":"NOT_FOUND"}
+                {"status":"INVALID"}
+                {"status":"FOUND","cardId":"%s"}
+                {"status":"NOT_FOUND"}
+                """.formatted(foundId));
+    }
+
+    @Test
+    void lookup_readsNdjson_andResolvesEachChunkWithOneLookup() throws Exception {
+        stubLookups();
+
+        String output = lookup("""
+                "%s"
+                "%s"
+                "%s"
+                """.formatted(FOUND_PAN, MISSING_PAN, FOUND_PAN));
+
+        assertThat(output.lines()).containsExactly(
+                "{\"status\":\"FOUND\",\"cardId\":\"%s\"}".formatted(foundId),
+                "{\"status\":\"NOT_FOUND\"}",
+                "{\"status\":\"FOUND\",\"cardId\":\"%s\"}".formatted(foundId));
+
+        verify(cardLookupService).findCardIds(List.of(hasher.hash(FOUND_PAN), hasher.hash(MISSING_PAN)));
+        verify(cardLookupService).findCardIds(List.of(hasher.hash(FOUND_PAN)));
+        verifyNoMoreInteractions(cardLookupService);
+    }
+
+    @Test
+    void lookup_writesNothing_whenThereAreNoCardNumbers() throws Exception {
+        assertThat(lookup("[]")).isEmpty();
+        assertThat(lookup("")).isEmpty();
+
+        verifyNoInteractions(cardLookupService);
+    }
+
+    @Test
+    void lookup_throws_whenInputIsNotCardNumbers() {
+        assertThatThrownBy(() -> lookup("""
+                [{"cardNumber": "%s"}]
+                """.formatted(FOUND_PAN)))
+                .isInstanceOf(JacksonException.class);
+
+        verifyNoInteractions(cardLookupService);
+    }
+
+    @Test
+    void lookup_answersInvalid_forCardNumbersFailingLuhn_whenEnabled() throws Exception {
+        service = new CardBulkLookupService(hasher, cardLookupService, JsonMapper.builder().build(), 2, true);
+        stubLookups();
+
+        String output = lookup("""
+                ["%s", "%s"]
+                """.formatted(MISSING_PAN, FOUND_PAN));
+
+        assertThat(output).isEqualTo("""
+                {"status":"INVALID"}
+                {"status":"FOUND","cardId":"%s"}
+                """.formatted(foundId));
+    }
+
+    private void stubLookups() {
+        when(cardLookupService.findCardIds(anyCollection())).thenAnswer(inv -> {
+            Map<String, Optional<UUID>> cardIds = new HashMap<>();
+            for (String cardHash : inv.<Collection<String>>getArgument(0)) {
+                cardIds.put(cardHash, cardHash.equals(hasher.hash(FOUND_PAN)) ? Optional.of(foundId) : Optional.empty());
+            }
+            return cardIds;
+        });
+    }
+
+    private String lookup(String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.lookup(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.repository.CardBulkWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardGroupCommitterTest {
+
+    @Mock private CardBulkWriter cardBulkWriter;
+    @Mock private CardLookupService cardLookupService;
+    @Mock private PlatformTransactionManager transactionManager;
+
+    @Captor private ArgumentCaptor<List<Card>> groupCaptor;
+
+    private CardGroupCommitter committer;
+
+    @AfterEach
+    void tearDown() {
+        if (committer != null) committer.stop();
+    }
+
+    @Test
+    void create_storesConcurrentCreationsAsOneGroup_andReturnsAfterCommit() throws Exception {
+        committer = committer(true, Duration.ofSeconds(5), 8);
+        committer.start();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> creations = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Card card = card("hash-" + i);
+                creations.add(executor.submit(() -> {
+                    committer.create(card);
+                    return null;
+                }));
+            }
+            for (Future<?> creation : creations) {
+                creation.get(5, TimeUnit.SECONDS);
+            }
+        }
+
+        verify(cardBulkWriter).write(groupCaptor.capture());
+        assertThat(groupCaptor.getValue()).extracting(Card::getCardHash)
+                .containsExactlyInAnyOrder("hash-0", "hash-1", "hash-2", "hash-3", "hash-4", "hash-5", "hash-6", "hash-7");
+        verify(transactionManager).commit(any());
+        verify(cardLookupService).invalidate(anyCollection());
+    }
+
+    @Test
+    void create_commitsAfterMaxDelay_whenGroupIsNotFull() throws Exception {
+        committer = committer(true, Duration.ofMillis(10), 500);
+        committer.start();
+
+        committer.create(card("hash-1"));
+        committer.create(card("hash-2"));
+
+        verify(cardBulkWriter, times(2)).write(groupCaptor.capture());
+        assertThat(groupCaptor.getAllValues()).extracting(List::size).containsExactly(1, 1);
+    }
+
+    @Test
+    void create_rethrowsCommitFailure_andLeavesCacheAlone() {
+        committer = committer(true, Duration.ofMillis(1), 500);
+        committer.start();
+        doThrow(new IllegalStateException("database down")).when(cardBulkWriter).write(anyList());
+
+        assertThatThrownBy(() -> committer.create(card("hash-1")))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database down");
+
+        verifyNoInteractions(cardLookupService);
+    }
+
+    @Test
+    void create_returns_whenLookupInvalidationFails_andWriterKeepsCommitting() throws Exception {
+        committer = committer(true, Duration.ofMillis(1), 500);
+        committer.start();
+        doThrow(new IllegalStateException("cache down")).doNothing().when(cardLookupService).invalidate(anyCollection());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> {
+                committer.create(card("hash-1"));
+                committer.create(card("hash-2"));
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+        }
+
+        verify(cardBulkWriter, times(2)).write(anyList());
+        verify(cardLookupService, times(2)).invalidate(anyCollection());
+    }
+
+    @Test
+    void create_throws_whenGroupCommitIsDisabled() {
+        committer = committer(false, Duration.ofMillis(1), 500);
+        committer.start();
+
+        assertThat(committer.isEnabled()).isFalse();
+        assertThat(committer.isRunning()).isFalse();
+        assertThatThrownBy(() -> committer.create(card("hash-1")))
+                .isInstanceOf(IllegalStateException.class);
+
+        verifyNoInteractions(cardBulkWriter);
+    }
+
+    private CardGroupCommitter committer(boolean enabled, Duration maxDelay, int maxSize) {
+        return new CardGroupCommitter(cardBulkWriter, cardLookupService, transactionManager, enabled, maxDelay, maxSize);
+    }
+
+    private static Card card(String hash) {
+        return new Card(hash, "1111", null);
+    }
+}
@@ -0,0 +1,72 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import com.douglasavila.cardservice.util.CardHasher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.awaitility.Awaitility.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardHashFilterTest {
+
+    @Mock private CardRepository cardRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CardHashFilter filter;
+
+    @AfterEach
+    void tearDown() {
+        if (filter != null) filter.stop();
+    }
+
+    @Test
+    void mightContain_answersFromLoadedPages_andAddedHashes() {
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hash("hash-1"), UUID.randomUUID()), new CardIdByHash(hash("hash-2"), second)));
+        when(cardRepository.findCardHashPageAfter(second, Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hash("hash-3"), third)));
+        when(cardRepository.findCardHashPageAfter(third, Limit.of(2))).thenReturn(List.of());
+
+        filter = new CardHashFilter(cardRepository, meterRegistry, true, 1_000, 0.01, 2);
+        filter.start();
+
+        await().until(() -> !filter.mightContain(hash("hash-unknown")));
+        filter.add(hash("hash-4"));
+
+        assertThat(List.of(hash("hash-1"), hash("hash-2"), hash("hash-3"), hash("hash-4"))).allMatch(filter::mightContain);
+        assertThat(meterRegistry.get("card.hash.filter.size").gauge().value()).isEqualTo(4);
+        assertThat(meterRegistry.get("card.hash.filter.memory").gauge().value()).isPositive();
+        assertThat(meterRegistry.get("card.hash.filter.checks").tag("result", "absent").counter().count())
+                .isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    void mightContain_answersTrue_untilLoaded_andWhenDisabled() {
+        filter = new CardHashFilter(cardRepository, meterRegistry, false, 1_000, 0.01, 2);
+        filter.start();
+
+        assertThat(filter.mightContain(hash("hash-unknown"))).isTrue();
+        assertThat(filter.isRunning()).isFalse();
+        verifyNoInteractions(cardRepository);
+    }
+
+    // The filter probes with the digest words, so keys must be real 64-character hex hashes
+    private static String hash(String seed) {
+        return new CardHasher("test").hash(seed);
+    }
+}
@@ -0,0 +1,197 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import com.douglasavila.cardservice.util.CardHasher;
+import com.douglasavila.cardservice.util.TimeOrderedUuid;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.awaitility.Awaitility.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardIdIndexTest {
+
+    @Mock private CardRepository cardRepository;
+
+    @TempDir private Path tempDir;
+
+    private final CardHasher hasher = new CardHasher("test");
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CardIdIndex index;
+
+    @AfterEach
+    void tearDown() {
+        if (index != null) index.stop();
+    }
+
+    // The first card of the table, and every card asked about still stored
+    private void stubCardsTable(UUID firstCardId) {
+        lenient().when(cardRepository.findCardHashPage(Limit.of(1)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("first"), firstCardId)));
+        lenient().when(cardRepository.existsById(any())).thenReturn(true);
+    }
+
+    private CardIdIndex newIndex() {
+        return new CardIdIndex(cardRepository, meterRegistry, true, tempDir.resolve("card-id.index"), 1_000,
+                Duration.ofMinutes(1), Duration.ofSeconds(10), 2);
+    }
+
+    @Test
+    void reconcile_indexesStoredCards_andResumesFromMarkAfterRestart() {
+        UUID first = TimeOrderedUuid.next();
+        UUID second = TimeOrderedUuid.next();
+        stubCardsTable(first);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first), new CardIdByHash(hasher.hash("card-2"), second)));
+        when(cardRepository.findCardHashPageAfter(any(), eq(Limit.of(2)))).thenReturn(List.of());
+
+        index = newIndex();
+        index.start();
+        await().until(() -> index.find(hasher.hash("card-2")).isPresent());
+
+        assertThat(index.find(hasher.hash("card-1"))).contains(first);
+        assertThat(index.find(hasher.hash("card-3"))).isEmpty();
+        index.stop();
+
+        index = newIndex();
+        index.start();
+
+        // Reopened from the file, and reconciled from shortly before the last card seen
+        assertThat(index.find(hasher.hash("card-1"))).contains(first);
+        await().untilAsserted(() -> verify(cardRepository, atLeastOnce())
+                .findCardHashPageBetween(argThat(after -> after.compareTo(first) < 0), any(), eq(Limit.of(2))));
+        verify(cardRepository, times(1)).findCardHashPage(Limit.of(2));
+        assertThat(meterRegistry.get("card.id.index.lookups").tag("result", "hit").counter().count())
+                .isGreaterThanOrEqualTo(2);
+    }
+
+    @Test
+    void refresh_indexesCardsInsertedSinceLastRound() {
+        UUID first = TimeOrderedUuid.next();
+        UUID inserted = TimeOrderedUuid.next();
+        stubCardsTable(first);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first)));
+        when(cardRepository.findCardHashPageAfter(any(), eq(Limit.of(2)))).thenReturn(List.of());
+
+        index = newIndex();
+        index.start();
+        await().until(() -> index.find(hasher.hash("card-1")).isPresent());
+
+        when(cardRepository.findCardHashPageBetween(argThat(after -> after.compareTo(first) < 0), any(), eq(Limit.of(2))))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first), new CardIdByHash(hasher.hash("card-2"), inserted)));
+        index.refresh();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> index.find(hasher.hash("card-2")).isPresent());
+    }
+
+    @Test
+    void reconcile_keepsMarkOnTimeOrderedIds_whenLegacyRandomIdsSortAfterThem() {
+        UUID timeOrdered = TimeOrderedUuid.next();
+        // A random id the database sorts after every UUIDv7, read as a timestamp thousands of years ahead
+        UUID legacy = new UUID(0xF000_0000_0000_4000L, 0x8000_0000_0000_0001L);
+        UUID inserted = TimeOrderedUuid.next();
+        stubCardsTable(timeOrdered);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), timeOrdered), new CardIdByHash(hasher.hash("legacy"), legacy)));
+        when(cardRepository.findCardHashPageAfter(any(), eq(Limit.of(2)))).thenReturn(List.of());
+
+        index = newIndex();
+        index.start();
+        await().until(() -> index.find(hasher.hash("legacy")).isPresent());
+
+        // Rounds after the first resume from the UUIDv7 mark and stop before the legacy ids
+        when(cardRepository.findCardHashPageBetween(
+                argThat(after -> TimeOrderedUuid.DATABASE_ORDER.compare(after, timeOrdered) < 0),
+                argThat(before -> TimeOrderedUuid.DATABASE_ORDER.compare(before, inserted) > 0
+                        && TimeOrderedUuid.DATABASE_ORDER.compare(before, legacy) < 0),
+                eq(Limit.of(2))))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-2"), inserted)));
+        index.refresh();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> index.find(hasher.hash("card-2")).isPresent());
+        assertThat(index.find(hasher.hash("card-1"))).contains(timeOrdered);
+    }
+
+    @Test
+    void start_rebuildsIndex_whenCardsTableWasResetSinceItWasBuilt() {
+        UUID first = TimeOrderedUuid.next();
+        stubCardsTable(first);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first)));
+        when(cardRepository.findCardHashPageAfter(any(), eq(Limit.of(2)))).thenReturn(List.of());
+
+        index = newIndex();
+        index.start();
+        await().until(() -> index.find(hasher.hash("card-1")).isPresent());
+        index.stop();
+
+        // Reset: card-1 is gone and the table starts with another card
+        UUID afterReset = TimeOrderedUuid.next();
+        stubCardsTable(afterReset);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-2"), afterReset)));
+
+        index = newIndex();
+        index.start();
+
+        assertThat(index.find(hasher.hash("card-1"))).isEmpty();
+        await().until(() -> index.find(hasher.hash("card-2")).isPresent());
+    }
+
+    @Test
+    void reconcile_rebuildsIndex_whenLastReconciledCardDisappears() {
+        // Ids of one millisecond are not ordered, so card-2 is a second younger and holds the mark
+        UUID first = TimeOrderedUuid.lowest(System.currentTimeMillis() - 1_000);
+        UUID second = TimeOrderedUuid.next();
+        stubCardsTable(first);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first), new CardIdByHash(hasher.hash("card-2"), second)));
+        when(cardRepository.findCardHashPageAfter(any(), eq(Limit.of(2)))).thenReturn(List.of());
+
+        index = newIndex();
+        index.start();
+        // The first pass is over before the repository is stubbed again
+        verify(cardRepository, timeout(5_000)).findCardHashPageAfter(second, Limit.of(2));
+        assertThat(index.find(hasher.hash("card-2"))).contains(second);
+
+        // Restored from a backup taken after card-1 but before card-2
+        UUID third = TimeOrderedUuid.next();
+        when(cardRepository.existsById(second)).thenReturn(false);
+        when(cardRepository.findCardHashPage(Limit.of(2)))
+                .thenReturn(List.of(new CardIdByHash(hasher.hash("card-1"), first), new CardIdByHash(hasher.hash("card-3"), third)));
+        index.refresh();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> index.find(hasher.hash("card-3")).isPresent());
+        assertThat(index.find(hasher.hash("card-2"))).isEmpty();
+        assertThat(index.find(hasher.hash("card-1"))).contains(first);
+    }
+
+    @Test
+    void find_answersEmpty_whenDisabled() {
+        index = new CardIdIndex(cardRepository, meterRegistry, false, tempDir.resolve("card-id.index"), 1_000,
+                Duration.ofMinutes(1), Duration.ofSeconds(10), 2);
+        index.start();
+        index.put(hasher.hash("card-1"), UUID.randomUUID());
+
+        assertThat(index.find(hasher.hash("card-1"))).isEmpty();
+        assertThat(index.isRunning()).isFalse();
+        verifyNoInteractions(cardRepository);
+    }
+}
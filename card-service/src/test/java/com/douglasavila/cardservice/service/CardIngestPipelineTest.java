@@ -0,0 +1,139 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.util.BatchLineReader;
+import com.douglasavila.cardservice.util.BatchParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardIngestPipelineTest {
+
+    @Mock private BatchParser batchParser;
+
+    // The pipeline hands raw line bytes to the parser; route them to the String stubs
+    @BeforeEach
+    void routeByteLinesToStringParser() {
+        lenient().when(batchParser.parseCardLine(any(byte[].class), anyInt(), anyInt())).thenAnswer(inv -> {
+            String line = new String((byte[]) inv.getArgument(0), (int) inv.getArgument(1), (int) inv.getArgument(2),
+                    StandardCharsets.UTF_8);
+            return batchParser.parseCardLines(line).orElse(null);
+        });
+    }
+
+    private static BatchLineReader reader(String content) {
+        return new BatchLineReader(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    private static String cardLines(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            sb.append("C").append(i).append(" ".repeat(6 - String.valueOf(i).length()))
+                    .append("4456897922969999\n");
+        }
+        return sb.toString();
+    }
+
+    private void parseSequenceNumbersWithRandomDelay() {
+        when(batchParser.parseCardLines(anyString())).thenAnswer(inv -> {
+            String line = inv.getArgument(0);
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            Card card = new Card();
+            card.setBatchSequenceNumber(line.substring(1, 7).trim());
+            return Optional.of(card);
+        });
+    }
+
+    @Test
+    void next_returnsChunksInFileOrder_evenWhenParsersFinishOutOfOrder() throws Exception {
+        parseSequenceNumbersWithRandomDelay();
+
+        List<String> sequenceNumbers = new ArrayList<>();
+        long lastOffset = 0;
+
+        try (CardIngestPipeline pipeline = CardIngestPipeline.start(
+                reader(cardLines(200)), batchParser, "LOTE0001", 7, 4)) {
+
+            CardIngestPipeline.ParsedChunk chunk;
+            while ((chunk = pipeline.next()) != null) {
+                assertThat(chunk.endOffset()).isGreaterThan(lastOffset);
+                lastOffset = chunk.endOffset();
+                chunk.cards().forEach(c -> sequenceNumbers.add(c.getBatchSequenceNumber()));
+            }
+        }
+
+        assertThat(sequenceNumbers).hasSize(200);
+        for (int i = 0; i < 200; i++) {
+            assertThat(sequenceNumbers.get(i)).isEqualTo(String.valueOf(i + 1));
+        }
+        assertThat(lastOffset).isEqualTo(cardLines(200).length());
+    }
+
+    @Test
+    void next_stopsAtTrailer_andSkipsBlankAndInvalidLines() throws Exception {
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(new Card()));
+        when(batchParser.parseCardLines("C2     INVALID")).thenReturn(Optional.empty());
+
+        String content = "C1     4456897922969999\n\nC2     INVALID\nLOTE0001000002\nC3     4456897922969999\n";
+
+        try (CardIngestPipeline pipeline = CardIngestPipeline.start(
+                reader(content), batchParser, "LOTE0001", 10, 4)) {
+
+            CardIngestPipeline.ParsedChunk chunk = pipeline.next();
+
+            assertThat(chunk.cards()).hasSize(1);
+            assertThat(chunk.endOffset()).isEqualTo("C1     4456897922969999\n\nC2     INVALID\nLOTE0001000002\n".length());
+            assertThat(pipeline.next()).isNull();
+            assertThat(pipeline.next()).isNull();
+        }
+
+        verify(batchParser, never()).parseCardLines("C3     4456897922969999");
+    }
+
+    @Test
+    void next_rethrowsParserFailure_afterChunksThatCameBeforeIt() throws Exception {
+        when(batchParser.parseCardLines("C1     4456897922969999")).thenReturn(Optional.of(new Card()));
+        when(batchParser.parseCardLines("C2     4456897922969999")).thenThrow(new IllegalStateException("boom"));
+
+        try (CardIngestPipeline pipeline = CardIngestPipeline.start(
+                reader(cardLines(2)), batchParser, "LOTE0001", 1, 4)) {
+
+            assertThat(pipeline.next().cards()).hasSize(1);
+            assertThatThrownBy(pipeline::next)
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("boom");
+            assertThat(pipeline.next()).isNull();
+        }
+    }
+
+    @Test
+    void reader_doesNotRunAheadOfBoundedQueue_whileChunksAreNotConsumed() throws Exception {
+        parseSequenceNumbersWithRandomDelay();
+
+        try (CardIngestPipeline pipeline = CardIngestPipeline.start(
+                reader(cardLines(1000)), batchParser, "LOTE0001", 10, 2)) {
+
+            Thread.sleep(300);
+
+            // Two chunks in the queue plus the one the reader is blocked on
+            verify(batchParser, atMost(30)).parseCardLines(anyString());
+
+            assertThat(pipeline.next().cards()).hasSize(10);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Card;
+import com.douglasavila.cardservice.repository.CardIdByHash;
+import com.douglasavila.cardservice.repository.CardRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CardLookupServiceTest {
+
+    @Mock private CardRepository cardRepository;
+    @Mock private CardHashFilter cardHashFilter;
+    @Mock private CardIdIndex cardIdIndex;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CardLookupService service;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(cardHashFilter.mightContain(anyString())).thenReturn(true);
+        service = new CardLookupService(cardRepository, cardHashFilter, cardIdIndex, meterRegistry, 100, Duration.ofSeconds(30), nanos::get);
+    }
+
+    @Test
+    void findCardId_readsDatabaseOnce_andCountsHitsAndMisses() {
+        UUID id = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.of(card(id)));
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+        assertThat(service.findCardId("hash-1")).contains(id);
+        assertThat(service.findCardId("hash-1")).contains(id);
+
+        verify(cardRepository, times(1)).findByCardHash("hash-1");
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "cardLookup").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "cardLookup").tag("result", "miss")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void findCardId_cachesUnknownHash_untilNegativeTtlExpires() {
+        when(cardRepository.findByCardHash("hash-unknown")).thenReturn(Optional.empty());
+
+        assertThat(service.findCardId("hash-unknown")).isEmpty();
+        nanos.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertThat(service.findCardId("hash-unknown")).isEmpty();
+        verify(cardRepository, times(1)).findByCardHash("hash-unknown");
+
+        nanos.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(service.findCardId("hash-unknown")).isEmpty();
+        verify(cardRepository, times(2)).findByCardHash("hash-unknown");
+    }
+
+    @Test
+    void findCardId_keepsFoundIds_pastNegativeTtl() {
+        UUID id = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.of(card(id)));
+
+        service.findCardId("hash-1");
+        nanos.addAndGet(Duration.ofHours(1).toNanos());
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+        verify(cardRepository, times(1)).findByCardHash("hash-1");
+    }
+
+    @Test
+    void invalidate_dropsCachedMiss_soInsertedCardIsFound() {
+        UUID id = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-1"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(card(id)));
+        when(cardRepository.findByCardHash("hash-2"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(card(id)));
+
+        assertThat(service.findCardId("hash-1")).isEmpty();
+        assertThat(service.findCardId("hash-2")).isEmpty();
+
+        service.invalidate("hash-1");
+        service.invalidate(List.of("hash-2"));
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+        assertThat(service.findCardId("hash-2")).contains(id);
+    }
+
+    @Test
+    void findCardId_sharesOneQuery_betweenConcurrentLookupsOfSameHash() throws Exception {
+        UUID id = UUID.randomUUID();
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+
+        when(cardRepository.findByCardHash("hash-hot")).thenAnswer(inv -> {
+            queryStarted.countDown();
+            releaseQuery.await(5, TimeUnit.SECONDS);
+            return Optional.of(card(id));
+        });
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<UUID>> first = executor.submit(() -> service.findCardId("hash-hot"));
+            assertThat(queryStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            List<Future<Optional<UUID>>> others = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                others.add(executor.submit(() -> service.findCardId("hash-hot")));
+            }
+            releaseQuery.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).contains(id);
+            for (Future<Optional<UUID>> other : others) {
+                assertThat(other.get(5, TimeUnit.SECONDS)).contains(id);
+            }
+        }
+
+        verify(cardRepository, times(1)).findByCardHash("hash-hot");
+    }
+
+    @Test
+    void findCardId_rethrowsQueryFailure_andDoesNotCacheIt() {
+        UUID id = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-1"))
+                .thenThrow(new IllegalStateException("database down"))
+                .thenReturn(Optional.of(card(id)));
+
+        assertThatThrownBy(() -> service.findCardId("hash-1"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("database down");
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+    }
+
+    @Test
+    void invalidate_whileLookupIsRunning_doesNotKeepItsMiss() throws Exception {
+        UUID id = UUID.randomUUID();
+        CountDownLatch queryStarted = new CountDownLatch(1);
+        CountDownLatch releaseQuery = new CountDownLatch(1);
+
+        when(cardRepository.findByCardHash("hash-1"))
+                .thenAnswer(inv -> {
+                    queryStarted.countDown();
+                    releaseQuery.await(5, TimeUnit.SECONDS);
+                    return Optional.empty();
+                })
+                .thenReturn(Optional.of(card(id)));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Optional<UUID>> running = executor.submit(() -> service.findCardId("hash-1"));
+            assertThat(queryStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            service.invalidate(List.of("hash-1"));
+            releaseQuery.countDown();
+
+            assertThat(running.get(5, TimeUnit.SECONDS)).isEmpty();
+        }
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+    }
+
+    @Test
+    void findCardIds_queriesOnlyHashesNotCached_andCachesFoundIds() {
+        UUID cachedId = UUID.randomUUID();
+        UUID foundId = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-cached")).thenReturn(Optional.of(card(cachedId)));
+        when(cardRepository.findCardIdsByCardHashIn(List.of("hash-found", "hash-missing")))
+                .thenReturn(List.of(new CardIdByHash("hash-found", foundId)));
+
+        service.findCardId("hash-cached");
+
+        Map<String, Optional<UUID>> cardIds = service.findCardIds(List.of("hash-cached", "hash-found", "hash-missing"));
+
+        assertThat(cardIds).containsOnly(
+                entry("hash-cached", Optional.of(cachedId)),
+                entry("hash-found", Optional.of(foundId)),
+                entry("hash-missing", Optional.empty()));
+
+        assertThat(service.findCardId("hash-found")).contains(foundId);
+        verify(cardRepository, never()).findByCardHash("hash-found");
+    }
+
+    @Test
+    void findCardId_answersUnknown_withoutDatabase_whenFilterHasNeverSeenHash() {
+        when(cardHashFilter.mightContain("hash-new")).thenReturn(false);
+
+        assertThat(service.findCardId("hash-new")).isEmpty();
+
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void findCardId_reportsFalsePositive_whenFilterLetsThroughUnknownHash() {
+        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.empty());
+
+        assertThat(service.findCardId("hash-1")).isEmpty();
+
+        verify(cardHashFilter).falsePositive();
+    }
+
+    @Test
+    void findCardIds_queriesOnlyHashesFilterMightHold() {
+        UUID id = UUID.randomUUID();
+        when(cardHashFilter.mightContain("hash-new")).thenReturn(false);
+        when(cardRepository.findCardIdsByCardHashIn(List.of("hash-1")))
+                .thenReturn(List.of(new CardIdByHash("hash-1", id)));
+
+        assertThat(service.findCardIds(List.of("hash-new", "hash-1")))
+                .containsEntry("hash-new", Optional.empty())
+                .containsEntry("hash-1", Optional.of(id));
+    }
+
+    @Test
+    void invalidate_addsStoredHashesToFilter_andRefreshesIndex() {
+        service.invalidate("hash-1");
+        service.invalidate(List.of("hash-2", "hash-3"));
+
+        verify(cardHashFilter).add("hash-1");
+        verify(cardHashFilter).add("hash-2");
+        verify(cardHashFilter).add("hash-3");
+        verify(cardIdIndex, times(2)).refresh();
+    }
+
+    @Test
+    void findCardId_answersFromIndex_withoutDatabase() {
+        UUID id = UUID.randomUUID();
+        when(cardIdIndex.find("hash-1")).thenReturn(Optional.of(id));
+
+        assertThat(service.findCardId("hash-1")).contains(id);
+        assertThat(service.findCardIds(List.of("hash-1"))).containsEntry("hash-1", Optional.of(id));
+
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void findCardId_indexesIdsFoundInDatabase() {
+        UUID id = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+        when(cardRepository.findByCardHash("hash-1")).thenReturn(Optional.of(card(id)));
+        when(cardRepository.findCardIdsByCardHashIn(List.of("hash-2")))
+                .thenReturn(List.of(new CardIdByHash("hash-2", otherId)));
+
+        service.findCardId("hash-1");
+        service.findCardIds(List.of("hash-2"));
+
+        verify(cardIdIndex).put("hash-1", id);
+        verify(cardIdIndex).put("hash-2", otherId);
+    }
+
+    private static Card card(UUID id) {
+        Card card = new Card();
+        card.setId(id);
+        return card;
+    }
+}
@@ -0,0 +1,171 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Batch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DropFolderIngestionTest {
+
+    private static final String CONTENT = "DESAFIO-HYPERATIVA           20180524LOTE0001000010\n";
+
+    @Mock private CardBatchIngestService ingestService;
+
+    @TempDir private Path dropDir;
+
+    private DropFolderIngestion ingestion;
+
+    @AfterEach
+    void tearDown() {
+        if (ingestion != null) ingestion.stop();
+    }
+
+    @Test
+    void start_claimsFilesAlreadyDropped_andLeavesUploadsInProgressAlone() throws Exception {
+        Files.writeString(dropDir.resolve("batch-1.txt"), CONTENT);
+        Path inProgress = Files.writeString(dropDir.resolve("batch-2.txt.part"), CONTENT);
+        ArgumentCaptor<Path> claimed = ArgumentCaptor.forClass(Path.class);
+
+        ingestion = start(2);
+
+        verify(ingestService, timeout(5000)).ingestFile(claimed.capture(), eq(StandardCharsets.UTF_8));
+        ingestion.stop();
+
+        assertThat(claimed.getValue().getParent()).isEqualTo(dropDir.resolve("processing"));
+        assertThat(claimed.getValue().getFileName().toString()).endsWith("-batch-1.txt");
+        assertThat(claimed.getValue()).doesNotExist();
+        assertThat(dropDir.resolve("batch-1.txt")).doesNotExist();
+        assertThat(inProgress).exists();
+        verifyNoMoreInteractions(ingestService);
+    }
+
+    @Test
+    void watch_ingestsFileRenamedIntoFolderAfterStart() throws Exception {
+        ingestion = start(1);
+
+        Path upload = Files.writeString(dropDir.resolve("batch-3.txt.part"), CONTENT);
+        Files.move(upload, dropDir.resolve("batch-3.txt"));
+
+        verify(ingestService, timeout(5000)).ingestFile(argThat(path ->
+                path.getFileName().toString().endsWith("-batch-3.txt")), eq(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void ingest_movesFileToFailedUnderItsDroppedName_whenIngestionFails() throws Exception {
+        Files.writeString(dropDir.resolve("batch-4.txt"), CONTENT);
+        doThrow(new IllegalStateException("database down")).when(ingestService).ingestFile(any(), any());
+
+        ingestion = start(1);
+
+        verify(ingestService, timeout(5000)).ingestFile(any(), any());
+        ingestion.stop();
+
+        assertThat(dropDir.resolve("failed").resolve("batch-4.txt")).hasContent(CONTENT.strip());
+        try (var processing = Files.list(dropDir.resolve("processing"))) {
+            assertThat(processing).isEmpty();
+        }
+    }
+
+    @Test
+    void start_restartsFilesLeftInProcessing() throws Exception {
+        Path processing = Files.createDirectories(dropDir.resolve("processing"));
+        Path claimed = Files.writeString(processing.resolve(UUID.randomUUID() + "-batch-5.txt"), CONTENT);
+        Batch batch = new Batch("DESAFIO-HYPERATIVA", LocalDate.of(2018, 5, 24), "LOTE0001", 10);
+        when(ingestService.restartFile(claimed, StandardCharsets.UTF_8)).thenReturn(Optional.of(batch));
+
+        ingestion = start(1);
+
+        verify(ingestService, timeout(5000)).ingestStartedFile(claimed, StandardCharsets.UTF_8, batch);
+        ingestion.stop();
+
+        assertThat(claimed).doesNotExist();
+        verify(ingestService, never()).ingestFile(any(), any());
+    }
+
+    @Test
+    void start_leavesNewFilesUnclaimed_whileResumedFilesTakeEveryWorker() throws Exception {
+        Path processing = Files.createDirectories(dropDir.resolve("processing"));
+        Path claimed = Files.writeString(processing.resolve(UUID.randomUUID() + "-batch-6.txt"), CONTENT);
+        Path dropped = Files.writeString(dropDir.resolve("batch-7.txt"), CONTENT);
+        CountDownLatch restarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(ingestService.restartFile(claimed, StandardCharsets.UTF_8)).thenAnswer(inv -> {
+            restarted.countDown();
+            release.await();
+            return Optional.empty();
+        });
+
+        ingestion = start(1);
+
+        assertThat(restarted.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        assertThat(dropped).exists();
+        verify(ingestService, never()).ingestFile(any(), any());
+
+        release.countDown();
+
+        verify(ingestService, timeout(5000)).ingestFile(argThat(path ->
+                path.getFileName().toString().endsWith("-batch-7.txt")), eq(StandardCharsets.UTF_8));
+        assertThat(dropped).doesNotExist();
+    }
+
+    @Test
+    void stop_doesNotClaimFileWatcherWasWaitingToClaim() throws Exception {
+        Path processing = Files.createDirectories(dropDir.resolve("processing"));
+        Path claimed = Files.writeString(processing.resolve(UUID.randomUUID() + "-batch-6.txt"), CONTENT);
+        Path dropped = Files.writeString(dropDir.resolve("batch-7.txt"), CONTENT);
+        CountDownLatch restarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(ingestService.restartFile(claimed, StandardCharsets.UTF_8)).thenAnswer(inv -> {
+            restarted.countDown();
+            release.await();
+            return Optional.empty();
+        });
+
+        ingestion = start(1);
+        assertThat(restarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The watcher is waiting for the only worker when the service stops
+        Thread stopping = Thread.ofPlatform().start(ingestion::stop);
+        Thread.sleep(200);
+        release.countDown();
+        stopping.join(5000);
+
+        assertThat(stopping.isAlive()).isFalse();
+        assertThat(dropped).exists();
+        verify(ingestService, never()).ingestFile(any(), any());
+    }
+
+    @Test
+    void start_doesNothing_whenNoFolderIsConfigured() {
+        ingestion = new DropFolderIngestion(ingestService, "", 1, StandardCharsets.UTF_8);
+        ingestion.start();
+
+        assertThat(ingestion.isEnabled()).isFalse();
+        assertThat(ingestion.isRunning()).isFalse();
+    }
+
+    private DropFolderIngestion start(int concurrency) {
+        DropFolderIngestion started = new DropFolderIngestion(ingestService, dropDir.toString(), concurrency, StandardCharsets.UTF_8);
+        started.start();
+        return started;
+    }
+}
@@ -0,0 +1,71 @@
+package com.douglasavila.cardservice.service;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.BatchStatus;
+import com.douglasavila.cardservice.entity.CardStatus;
+import com.douglasavila.cardservice.repository.BatchRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import(StatusRegistry.class)
+class StatusRegistryTest {
+
+    @Autowired
+    private StatusRegistry statusRegistry;
+
+    @Autowired
+    private BatchRepository batchRepository;
+
+    @Autowired
+    private EntityManager em;
+
+    @Test
+    void cardStatus_andBatchStatus_resolveSeededRows() {
+        for (CardStatus.Values value : CardStatus.Values.values()) {
+            CardStatus status = statusRegistry.cardStatus(value);
+
+            assertThat(status.getCardStatusId()).isEqualTo(value.getCardStatusId());
+            assertThat(status.getCardStatusName()).isEqualTo(value.name());
+        }
+
+        for (BatchStatus.Values value : BatchStatus.Values.values()) {
+            BatchStatus status = statusRegistry.batchStatus(value);
+
+            assertThat(status.getBatchStatusId()).isEqualTo(value.getBatchStatusId());
+            assertThat(status.getBatchStatusName()).isEqualTo(value.name());
+        }
+    }
+
+    @Test
+    void batchStatus_insideTransaction_isManagedAndLinksToNewBatch() {
+        BatchStatus received = statusRegistry.batchStatus(BatchStatus.Values.RECEIVED);
+        assertThat(em.contains(received)).isTrue();
+
+        Batch batch = new Batch("fileA.txt", LocalDate.of(2026, 2, 15), "LOTE0001", 10);
+        batch.setBatchStatus(received);
+        Batch saved = batchRepository.saveAndFlush(batch);
+        em.clear();
+
+        assertThat(batchRepository.findById(saved.getBatchId()).orElseThrow().getBatchStatus().getBatchStatusName())
+                .isEqualTo("RECEIVED");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void cardStatus_outsideTransaction_returnsTheInstanceLoadedAtStartup() {
+        assertThat(statusRegistry.cardStatus(CardStatus.Values.VALID))
+                .isSameAs(statusRegistry.cardStatus(CardStatus.Values.VALID));
+    }
+}
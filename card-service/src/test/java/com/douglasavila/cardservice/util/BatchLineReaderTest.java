@@ -0,0 +1,101 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BatchLineReaderTest {
+
+    private static BatchLineReader reader(String content) {
+        return new BatchLineReader(
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void readLine_returnsLinesWithoutTerminators_andTracksByteOffset() throws Exception {
+        BatchLineReader reader = reader("HEADER\nC1\r\n\nLAST");
+
+        assertThat(reader.readLine()).isEqualTo("HEADER");
+        assertThat(reader.getOffset()).isEqualTo(7);
+
+        assertThat(reader.readLine()).isEqualTo("C1");
+        assertThat(reader.getOffset()).isEqualTo(11);
+
+        assertThat(reader.readLine()).isEmpty();
+        assertThat(reader.getOffset()).isEqualTo(12);
+
+        assertThat(reader.readLine()).isEqualTo("LAST");
+        assertThat(reader.getOffset()).isEqualTo(16);
+
+        assertThat(reader.readLine()).isNull();
+    }
+
+    @Test
+    void nextLine_leavesRawBytesInReusedBuffer_withoutTerminators() throws Exception {
+        BatchLineReader reader = reader("C1     4456897922969999\r\nC2\n");
+
+        assertThat(reader.nextLine()).isTrue();
+        byte[] first = reader.lineBytes();
+        assertThat(new String(first, 0, reader.lineLength(), StandardCharsets.US_ASCII)).isEqualTo("C1     4456897922969999");
+
+        assertThat(reader.nextLine()).isTrue();
+        assertThat(reader.lineBytes()).isSameAs(first);
+        assertThat(new String(reader.lineBytes(), 0, reader.lineLength(), StandardCharsets.US_ASCII)).isEqualTo("C2");
+        assertThat(reader.getOffset()).isEqualTo(28);
+
+        assertThat(reader.nextLine()).isFalse();
+    }
+
+    @Test
+    void getOffset_countsBytes_notChars_forMultibyteContent() throws Exception {
+        BatchLineReader reader = reader("NUMERAÇÃO\nC1\n");
+
+        assertThat(reader.readLine()).isEqualTo("NUMERAÇÃO");
+        assertThat(reader.getOffset()).isEqualTo("NUMERAÇÃO\n".getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    void readLine_handlesLinesLongerThanInternalBuffers() throws Exception {
+        String longLine = "X".repeat(200_000);
+        BatchLineReader reader = reader(longLine + "\nNEXT\n");
+
+        assertThat(reader.readLine()).isEqualTo(longLine);
+        assertThat(reader.readLine()).isEqualTo("NEXT");
+        assertThat(reader.getOffset()).isEqualTo(200_006);
+    }
+
+    @Test
+    void skipTo_continuesReadingFromGivenOffset() throws Exception {
+        BatchLineReader reader = reader("HEADER\nC1\nC2\nC3\n");
+
+        reader.readLine();
+        reader.skipTo(10);
+
+        assertThat(reader.readLine()).isEqualTo("C2");
+        assertThat(reader.getOffset()).isEqualTo(13);
+    }
+
+    @Test
+    void skipTo_throwsEof_whenStreamIsShorterThanOffset() throws Exception {
+        BatchLineReader reader = reader("HEADER\nC1\n");
+
+        reader.readLine();
+
+        assertThatThrownBy(() -> reader.skipTo(1_000))
+                .isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    void skipTo_rejectsOffsetsBehindCurrentPosition() throws Exception {
+        BatchLineReader reader = reader("HEADER\nC1\n");
+
+        reader.readLine();
+
+        assertThatThrownBy(() -> reader.skipTo(3))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,92 @@
+package com.douglasavila.cardservice.util;
+
+import com.douglasavila.cardservice.entity.Card;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+class BinRangeIndexTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void find_widensSingleBinsAndRanges_andSkipsCommentsAndSeparators() throws IOException {
+        BinRangeIndex index = load("""
+                # bin,brand,issuer
+                411111,VISA,Test Bank
+
+                51000000,51999999,MASTERCARD,
+                """);
+
+        assertThat(index.find("4111111111111111")).isEqualTo(new BinRangeIndex.Bin("VISA", "Test Bank"));
+        assertThat(index.find("4111-1199 1111 1111")).isEqualTo(new BinRangeIndex.Bin("VISA", "Test Bank"));
+        assertThat(index.find("5105105105105100")).isEqualTo(new BinRangeIndex.Bin("MASTERCARD", null));
+        assertThat(index.find("4111120011111111")).isNull();
+        assertThat(index.find("4111")).isNull();
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void find_prefersNarrowestRange_andLaterLineOnTie() throws IOException {
+        BinRangeIndex index = load("""
+                400000,499999,VISA,
+                411111,VISA,Wide Bank
+                41111150,41111159,VISA,Narrow Bank
+                422222,VISA,First Bank
+                422222,VISA,Second Bank
+                """);
+
+        assertThat(index.find("4000000000000002")).isEqualTo(new BinRangeIndex.Bin("VISA", null));
+        assertThat(index.find("4111114911111111")).isEqualTo(new BinRangeIndex.Bin("VISA", "Wide Bank"));
+        assertThat(index.find("4111115511111111")).isEqualTo(new BinRangeIndex.Bin("VISA", "Narrow Bank"));
+        assertThat(index.find("4111116011111111")).isEqualTo(new BinRangeIndex.Bin("VISA", "Wide Bank"));
+        assertThat(index.find("4111120011111111")).isEqualTo(new BinRangeIndex.Bin("VISA", null));
+        assertThat(index.find("4222220000000000")).isEqualTo(new BinRangeIndex.Bin("VISA", "Second Bank"));
+        assertThat(index.find("4999999999999999")).isEqualTo(new BinRangeIndex.Bin("VISA", null));
+        assertThat(index.find("5000000000000000")).isNull();
+    }
+
+    @Test
+    void classify_setsBrandAndIssuer_fromBytesWithinLargerBuffer() throws IOException {
+        BinRangeIndex index = load("411111,VISA,Test Bank\n");
+        byte[] buffer = "XX4111111111111111YY".getBytes(StandardCharsets.US_ASCII);
+
+        Card card = new Card("hash", "1111", null);
+        index.classify(card, buffer, 2, 16);
+
+        assertThat(card.getCardBrand()).isEqualTo("VISA");
+        assertThat(card.getCardIssuer()).isEqualTo("Test Bank");
+
+        Card unknown = new Card("hash", "1111", null);
+        BinRangeIndex.EMPTY.classify(unknown, "4111111111111111");
+
+        assertThat(unknown.getCardBrand()).isNull();
+        assertThat(unknown.getCardIssuer()).isNull();
+    }
+
+    @Test
+    void load_throws_namingTheInvalidLine() {
+        assertThatThrownBy(() -> load("411111,VISA,Bank\n41111,VISA,Bank\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageStartingWith("Invalid BIN table line 2");
+        assertThatThrownBy(() -> load("499999,400000,VISA,Bank\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("first BIN is after last BIN");
+        assertThatThrownBy(() -> load("411111,,Bank\n"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("brand is missing");
+    }
+
+    private BinRangeIndex load(String table) throws IOException {
+        Path file = dir.resolve("bins.csv");
+        Files.writeString(file, table);
+        return BinRangeIndex.load(file);
+    }
+}
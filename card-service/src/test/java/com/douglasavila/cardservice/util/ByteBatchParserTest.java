@@ -0,0 +1,120 @@
+package com.douglasavila.cardservice.util;
+
+import com.douglasavila.cardservice.entity.Batch;
+import com.douglasavila.cardservice.entity.Card;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ByteBatchParserTest {
+
+    private final CardHasher hasher = new CardHasher("salt");
+    private final ByteBatchParser parser = new ByteBatchParser(hasher);
+
+    @Test
+    void parseHeaderLine_parsesFieldsCorrectly() {
+        Batch batch = parser.parseHeaderLine("DESAFIO-HYPERATIVA           20180524LOTE0001000010");
+
+        assertThat(batch.getFileName()).isEqualTo("DESAFIO-HYPERATIVA");
+        assertThat(batch.getFileDate()).isEqualTo(LocalDate.of(2018, 5, 24));
+        assertThat(batch.getBatchCode()).isEqualTo("LOTE0001");
+        assertThat(batch.getExpectedRecords()).isEqualTo(10);
+    }
+
+    @Test
+    void parseHeaderLine_throws_whenNullOrTooShort() {
+        assertThatThrownBy(() -> parser.parseHeaderLine(null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid header line.");
+        assertThatThrownBy(() -> parser.parseHeaderLine("SHORT"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid header line.");
+    }
+
+    @Test
+    void parseHeaderLine_throws_whenDateOrRecordCountIsNotNumeric() {
+        assertThatThrownBy(() -> parser.parseHeaderLine("DESAFIO-HYPERATIVA           2018O524LOTE0001000010"))
+                .isInstanceOf(DateTimeParseException.class);
+        assertThatThrownBy(() -> parser.parseHeaderLine("DESAFIO-HYPERATIVA           20180524LOTE0001ABCDEF"))
+                .isInstanceOf(NumberFormatException.class);
+    }
+
+    @Test
+    void parseCardLine_readsFieldsByOffset_withinLargerBuffer() {
+        byte[] buffer = ("XXXX" + "C2     4111111111111111                               " + "YYYY")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        Card card = parser.parseCardLine(buffer, 4, buffer.length - 8);
+
+        assertThat(card).isNotNull();
+        assertThat(card.getBatchSequenceNumber()).isEqualTo("2");
+        assertThat(card.getCardLast4()).isEqualTo("1111");
+        assertThat(card.getCardHash()).isEqualTo(hasher.hash("4111111111111111"));
+        assertThat(CardHasher.toHex(card.getCardHashDigest())).isEqualTo(card.getCardHash());
+        assertThat(card.getCardStatus()).isNull();
+    }
+
+    @Test
+    void parseCardLine_returnsNull_whenTooShortOrPanInvalid() {
+        byte[] shortLine = "C1 4111111111111111".getBytes(StandardCharsets.US_ASCII);
+        byte[] invalidPan = "C1     123                                         ".getBytes(StandardCharsets.US_ASCII);
+        byte[] sameDigits = "C1     1111111111111111                               ".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(parser.parseCardLine(shortLine, 0, shortLine.length)).isNull();
+        assertThat(parser.parseCardLine(invalidPan, 0, invalidPan.length)).isNull();
+        assertThat(parser.parseCardLine(sameDigits, 0, sameDigits.length)).isNull();
+        assertThat(parser.parseCardLines(null)).isEmpty();
+    }
+
+    @Test
+    void parseCardLine_classifiesByBin_onBothPaths(@TempDir Path dir) throws IOException {
+        Path table = dir.resolve("bins.csv");
+        Files.writeString(table, "411111,VISA,Test Bank\n");
+        BinRangeIndex bins = BinRangeIndex.load(table);
+        ByteBatchParser classifying = new ByteBatchParser(hasher, false, () -> bins);
+
+        Card plain = classifying.parseCardLines("C1     4111111111111111                               ").orElseThrow();
+        Card separated = classifying.parseCardLines("C2     4111-1111-1111-1111                            ").orElseThrow();
+        Card unknown = classifying.parseCardLines("C3     4456897922969999                               ").orElseThrow();
+
+        assertThat(plain.getCardBrand()).isEqualTo("VISA");
+        assertThat(plain.getCardIssuer()).isEqualTo("Test Bank");
+        assertThat(separated.getCardBrand()).isEqualTo("VISA");
+        assertThat(separated.getCardIssuer()).isEqualTo("Test Bank");
+        assertThat(unknown.getCardBrand()).isNull();
+        assertThat(parser.parseCardLines("C4     4111111111111111                               ").orElseThrow().getCardBrand()).isNull();
+    }
+
+    @Test
+    void parseCardLines_producesSameCardsAsStringParser() {
+        StringBatchParser stringParser = new StringBatchParser(hasher);
+
+        for (String line : new String[] {
+                "C1     4456897922969999                               ",
+                "CABCDEF4111111111111111                               ",
+                "C3     4111-1111-1111-1111                            ",
+                "C4     4111 1111 1111 111                             ",
+                "C5     411111111111X                                  "}) {
+
+            Optional<Card> expected = stringParser.parseCardLines(line);
+            Optional<Card> actual = parser.parseCardLines(line);
+
+            assertThat(actual.isPresent()).as(line).isEqualTo(expected.isPresent());
+            expected.ifPresent(e -> {
+                assertThat(actual.orElseThrow().getCardHash()).as(line).isEqualTo(e.getCardHash());
+                assertThat(actual.orElseThrow().getCardLast4()).as(line).isEqualTo(e.getCardLast4());
+                assertThat(actual.orElseThrow().getBatchSequenceNumber()).as(line).isEqualTo(e.getBatchSequenceNumber());
+            });
+        }
+    }
+}
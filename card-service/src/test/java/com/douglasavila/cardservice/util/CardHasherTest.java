@@ -2,6 +2,13 @@ package com.douglasavila.cardservice.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.IntStream;
+
 import static org.assertj.core.api.Assertions.*;
 
 class CardHasherTest {
@@ -34,6 +41,61 @@ class CardHasherTest {
         assertThat(h2).isEqualTo(h1);
     }
 
+    @Test
+    void hash_ofDigitBytes_matchesHashOfString() {
+        CardHasher hasher = new CardHasher("salt-ç");
+        byte[] line = "C1     4111111111111111   ".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(hasher.hash(line, 7, 16)).isEqualTo(hasher.hash("4111111111111111"));
+    }
+
+    @Test
+    void hash_matchesSha256OfTrimmedCardNumberAndSalt() throws Exception {
+        CardHasher hasher = new CardHasher("salt-ç");
+
+        byte[] expected = MessageDigest.getInstance("SHA-256")
+                .digest("4111111111111111salt-ç".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(hasher.hash(" 4111111111111111 ")).isEqualTo(HexFormat.of().formatHex(expected));
+    }
+
+    @Test
+    void hash_intoBuffer_writesRawBytesAtOffset_matchingHex() {
+        CardHasher hasher = new CardHasher("salt");
+        byte[] pan = "4111111111111111".getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[40];
+
+        hasher.hash(pan, 0, pan.length, out, 4);
+
+        assertThat(CardHasher.toHex(Arrays.copyOfRange(out, 4, 36))).isEqualTo(hasher.hash("4111111111111111"));
+        assertThat(Arrays.copyOfRange(out, 0, 4)).containsOnly(0);
+        assertThat(Arrays.copyOfRange(out, 36, 40)).containsOnly(0);
+    }
+
+    @Test
+    void hash_intoBuffer_rejectsTooSmallBuffer_andKeepsDigestUsable() {
+        CardHasher hasher = new CardHasher("salt");
+        byte[] pan = "4111111111111111".getBytes(StandardCharsets.US_ASCII);
+        String expected = hasher.hash("4111111111111111");
+
+        assertThatThrownBy(() -> hasher.hash(pan, 0, pan.length, new byte[32], 1))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(hasher.hash("4111111111111111")).isEqualTo(expected);
+    }
+
+    @Test
+    void hash_isConsistentAcrossThreads() {
+        CardHasher hasher = new CardHasher("salt");
+        String expected = hasher.hash("4111111111111111");
+
+        List<String> hashes = IntStream.range(0, 10_000).parallel()
+                .mapToObj(i -> hasher.hash("4111111111111111"))
+                .toList();
+
+        assertThat(hashes).containsOnly(expected);
+    }
+
     @Test
     void last4_returnsLast4_whenLengthAtLeast4() {
         CardHasher hasher = new CardHasher("salt");
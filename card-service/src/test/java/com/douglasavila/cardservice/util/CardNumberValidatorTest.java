@@ -2,6 +2,9 @@ package com.douglasavila.cardservice.util;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.*;
 
 class CardNumberValidatorTest {
@@ -56,4 +59,51 @@ class CardNumberValidatorTest {
         // Intentionally non-Luhn-valid but structurally valid
         assertThat(CardNumberValidator.isValidPan("4111111111111123")).isTrue();
     }
+
+    @Test
+    void isValidPan_bytes_appliesSameRulesWithinRange() {
+        byte[] line = "C1     4111111111111111  ".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(CardNumberValidator.isValidPan(line, 7, 16)).isTrue();
+        assertThat(CardNumberValidator.isValidPan(line, 7, 12)).isFalse();
+        assertThat(CardNumberValidator.isValidPan(line, 6, 17)).isFalse();
+        assertThat(CardNumberValidator.isValidPan("1111111111111111".getBytes(StandardCharsets.US_ASCII), 0, 16)).isFalse();
+    }
+
+    @Test
+    void isValidPan_appliesLuhnValidation_whenEnabled() {
+        assertThat(CardNumberValidator.isValidPan("4111111111111111", true)).isTrue();
+        assertThat(CardNumberValidator.isValidPan("4111 1111 1111 1111", true)).isTrue();
+        assertThat(CardNumberValidator.isValidPan("378282246310005", true)).isTrue();
+        assertThat(CardNumberValidator.isValidPan("4222222222222", true)).isTrue();
+
+        assertThat(CardNumberValidator.isValidPan("4111111111111123", true)).isFalse();
+        assertThat(CardNumberValidator.isValidPan("378282246310006", true)).isFalse();
+        assertThat(CardNumberValidator.isValidPan("0000000000000", true)).isFalse();
+    }
+
+    @Test
+    void isValidPan_bytes_agreesWithStringRules_forAnyLengthAndContent() {
+        Random random = new Random(42);
+        // Neighbours of '0' and '9' catch off-by-one digit ranges
+        String alphabet = "0123456789/:a ";
+
+        for (int n = 0; n < 50_000; n++) {
+            int length = 11 + random.nextInt(10);
+            char repeated = alphabet.charAt(random.nextInt(10));
+            StringBuilder pan = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                boolean digit = random.nextInt(8) != 0;
+                pan.append(n % 5 == 0 ? repeated : alphabet.charAt(digit ? random.nextInt(10) : 10 + random.nextInt(3)));
+            }
+            if (n % 7 == 0) pan.setCharAt(random.nextInt(length), alphabet.charAt(random.nextInt(10)));
+
+            byte[] line = ("C1     " + pan + "  ").getBytes(StandardCharsets.US_ASCII);
+            for (boolean luhn : new boolean[] {false, true}) {
+                assertThat(CardNumberValidator.isValidPan(line, 7, length, luhn))
+                        .as("%s luhn=%s", pan, luhn)
+                        .isEqualTo(CardNumberValidator.isValidPan(pan.toString(), luhn));
+            }
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class DigestSetTest {
+
+    private final CardHasher hasher = new CardHasher("test");
+
+    @Test
+    void add_isFalse_forHashAlreadyAdded_evenAfterGrowing() {
+        DigestSet set = new DigestSet(10);
+
+        assertThat(IntStream.range(0, 50_000)).allMatch(i -> set.add(hasher.hash("card-" + i)));
+        assertThat(IntStream.range(0, 50_000)).noneMatch(i -> set.add(hasher.hash("card-" + i)));
+        assertThat(set.size()).isEqualTo(50_000);
+    }
+
+    @Test
+    void add_tellsApartHashesSharingTheirFirstBytes() {
+        DigestSet set = new DigestSet(10);
+        String zeros = "0".repeat(64);
+
+        assertThat(set.add(zeros)).isTrue();
+        assertThat(set.add(zeros)).isFalse();
+        assertThat(set.add("0".repeat(63) + "1")).isTrue();
+        assertThat(set.add("0".repeat(47) + "1" + "0".repeat(16))).isTrue();
+        assertThat(set.add("0".repeat(63) + "1")).isFalse();
+        assertThat(set.size()).isEqualTo(3);
+    }
+
+    @Test
+    void add_treatsDigestBytesAndTheirHexAsTheSameHash() {
+        DigestSet set = new DigestSet(10);
+        byte[] digest = new byte[CardHasher.HASH_LENGTH];
+        byte[] cardNumber = "4456897922969999".getBytes(StandardCharsets.US_ASCII);
+        hasher.hash(cardNumber, 0, cardNumber.length, digest, 0);
+
+        assertThat(set.add(digest)).isTrue();
+        assertThat(set.add(hasher.hash("4456897922969999"))).isFalse();
+        assertThat(set.add(new byte[CardHasher.HASH_LENGTH])).isTrue();
+        assertThat(set.add("0".repeat(64))).isFalse();
+        assertThat(set.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,61 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MappedBatchFileTest {
+
+    @TempDir private Path tempDir;
+
+    private Path write(String content) throws Exception {
+        return Files.writeString(tempDir.resolve("batch.txt"), content);
+    }
+
+    @Test
+    void readLine_returnsLineAtOffset_withoutTerminator() throws Exception {
+        try (MappedBatchFile file = MappedBatchFile.open(write("HEADER\r\nC1\nC2"))) {
+            assertThat(file.readLine(0, StandardCharsets.UTF_8)).isEqualTo("HEADER");
+            assertThat(file.readLine(8, StandardCharsets.UTF_8)).isEqualTo("C1");
+            assertThat(file.readLine(11, StandardCharsets.UTF_8)).isEqualTo("C2");
+            assertThat(file.readLine(13, StandardCharsets.UTF_8)).isNull();
+        }
+    }
+
+    @Test
+    void lineStartAtOrAfter_movesToNextLineUnlessAlreadyAtOne() throws Exception {
+        try (MappedBatchFile file = MappedBatchFile.open(write("HEADER\nC1\nC2"))) {
+            assertThat(file.lineStartAtOrAfter(0)).isEqualTo(0);
+            assertThat(file.lineStartAtOrAfter(1)).isEqualTo(7);
+            assertThat(file.lineStartAtOrAfter(7)).isEqualTo(7);
+            assertThat(file.lineStartAtOrAfter(8)).isEqualTo(10);
+            assertThat(file.lineStartAtOrAfter(11)).isEqualTo(12);
+        }
+    }
+
+    @Test
+    void lineStartAtOrAfter_findsTerminatorBeyondScanBuffer() throws Exception {
+        String longLine = "X".repeat(20_000);
+
+        try (MappedBatchFile file = MappedBatchFile.open(write("H\n" + longLine + "\nC1\n"))) {
+            assertThat(file.lineStartAtOrAfter(5)).isEqualTo(2 + longLine.length() + 1);
+        }
+    }
+
+    @Test
+    void map_exposesRequestedRange() throws Exception {
+        try (MappedBatchFile file = MappedBatchFile.open(write("HEADER\nC1\nC2\n"))) {
+            MappedByteBuffer range = file.map(7, 10);
+
+            assertThat(range.limit()).isEqualTo(3);
+            assertThat(range.get(0)).isEqualTo((byte) 'C');
+            assertThat(range.get(2)).isEqualTo((byte) '\n');
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MappedCardIndexTest {
+
+    @TempDir private Path tempDir;
+
+    private final CardHasher hasher = new CardHasher("test");
+
+    @Test
+    void get_returnsStoredId_andNullForUnknownHash_andPutLeavesStoredSlotAlone() throws Exception {
+        UUID id = UUID.randomUUID();
+        UUID laterId = UUID.randomUUID();
+
+        try (MappedCardIndex index = MappedCardIndex.open(tempDir.resolve("card.index"), 1_000)) {
+            assertThat(index.put(hasher.hash("card-1"), id)).isTrue();
+            // Card ids never change, so the slot is not rewritten under concurrent readers
+            assertThat(index.put(hasher.hash("card-1"), laterId)).isTrue();
+
+            assertThat(index.get(hasher.hash("card-1"))).isEqualTo(id);
+            assertThat(index.get(hasher.hash("card-2"))).isNull();
+            assertThat(index.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void open_keepsEntriesMarkAndSource_acrossReopen() throws Exception {
+        Path path = tempDir.resolve("card.index");
+        List<UUID> ids = IntStream.range(0, 5_000).mapToObj(i -> UUID.randomUUID()).toList();
+        UUID mark = TimeOrderedUuid.next();
+
+        try (MappedCardIndex index = MappedCardIndex.open(path, 10_000)) {
+            assertThat(index.source()).isNull();
+            IntStream.range(0, ids.size()).forEach(i -> index.put(hasher.hash("card-" + i), ids.get(i)));
+            index.setMark(mark);
+            index.setSource(ids.getFirst());
+        }
+
+        try (MappedCardIndex index = MappedCardIndex.open(path, 10_000)) {
+            assertThat(index.wasCleanlyClosed()).isTrue();
+            assertThat(index.size()).isEqualTo(ids.size());
+            assertThat(index.mark()).isEqualTo(mark);
+            assertThat(index.source()).isEqualTo(ids.getFirst());
+            assertThat(IntStream.range(0, ids.size()))
+                    .allMatch(i -> ids.get(i).equals(index.get(hasher.hash("card-" + i))));
+        }
+    }
+
+    @Test
+    void open_growsSmallerFile_keepingEntries() throws Exception {
+        Path path = tempDir.resolve("card.index");
+        UUID id = UUID.randomUUID();
+
+        try (MappedCardIndex index = MappedCardIndex.open(path, 1_000)) {
+            index.put(hasher.hash("card-1"), id);
+        }
+
+        try (MappedCardIndex index = MappedCardIndex.open(path, 100_000)) {
+            assertThat(index.maxSize()).isGreaterThanOrEqualTo(100_000);
+            assertThat(index.get(hasher.hash("card-1"))).isEqualTo(id);
+        }
+    }
+
+    @Test
+    void put_refusesNewHashes_onceFull() throws Exception {
+        try (MappedCardIndex index = MappedCardIndex.open(tempDir.resolve("card.index"), 100)) {
+            IntStream.range(0, (int) index.maxSize()).forEach(i -> index.put(hasher.hash("card-" + i), UUID.randomUUID()));
+
+            assertThat(index.put(hasher.hash("card-new"), UUID.randomUUID())).isFalse();
+            assertThat(index.put(hasher.hash("card-0"), UUID.randomUUID())).isTrue();
+            assertThat(index.get(hasher.hash("card-new"))).isNull();
+        }
+    }
+
+    @Test
+    void wasCleanlyClosed_isFalse_whenFileWasLeftOpen() throws Exception {
+        Path path = tempDir.resolve("card.index");
+
+        MappedCardIndex leftOpen = MappedCardIndex.open(path, 1_000);
+        leftOpen.put(hasher.hash("card-1"), UUID.randomUUID());
+
+        try (MappedCardIndex index = MappedCardIndex.open(path, 1_000)) {
+            assertThat(index.wasCleanlyClosed()).isFalse();
+        }
+        leftOpen.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class ScalableBloomFilterTest {
+
+    private final CardHasher hasher = new CardHasher("test");
+
+    @Test
+    void mightContain_neverMissesAddedKey_evenAfterGrowingPastCapacity() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        long initialMemory = filter.memoryBytes();
+
+        IntStream.range(0, 20_000).forEach(i -> filter.add(hasher.hash("card-" + i)));
+
+        assertThat(IntStream.range(0, 20_000)).allMatch(i -> filter.mightContain(hasher.hash("card-" + i)));
+        assertThat(filter.memoryBytes()).isGreaterThan(initialMemory);
+    }
+
+    @Test
+    void mightContain_staysNearConfiguredFalsePositiveRate_forKeysNeverAdded() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        IntStream.range(0, 20_000).forEach(i -> filter.add(hasher.hash("card-" + i)));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> filter.mightContain(hasher.hash("other-" + i)))
+                .count();
+
+        assertThat(falsePositives / 100_000.0).isLessThan(0.015);
+        assertThat(filter.estimatedFalsePositiveRate()).isLessThan(0.01);
+    }
+
+    @Test
+    void add_countsRepeatedKeyOnce() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+        filter.add(hasher.hash("card-1"));
+        filter.add(hasher.hash("card-1"));
+
+        assertThat(filter.size()).isEqualTo(1);
+    }
+
+    @Test
+    void constructor_rejectsFalsePositiveRateOutsideUnitInterval() {
+        assertThatThrownBy(() -> new ScalableBloomFilter(100, 1.0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ScalableBloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
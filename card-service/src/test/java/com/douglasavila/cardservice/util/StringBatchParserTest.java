@@ -2,8 +2,6 @@ package com.douglasavila.cardservice.util;
 
 import com.douglasavila.cardservice.entity.Batch;
 import com.douglasavila.cardservice.entity.Card;
-import com.douglasavila.cardservice.entity.CardStatus;
-import com.douglasavila.cardservice.repository.CardStatusRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -16,14 +14,13 @@ import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
-class BatchParserTest {
+class StringBatchParserTest {
 
     @Mock private CardHasher hasher;
-    @Mock private CardStatusRepository cardStatusRepository;
 
     @Test
     void parseHeaderLine_parsesFieldsCorrectly() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         String header = "DESAFIO-HYPERATIVA           20180524LOTE0001000010";
 
@@ -37,7 +34,7 @@ class BatchParserTest {
 
     @Test
     void parseHeaderLine_throws_whenNull() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         assertThatThrownBy(() -> parser.parseHeaderLine(null))
                 .isInstanceOf(IllegalArgumentException.class)
@@ -46,7 +43,7 @@ class BatchParserTest {
 
     @Test
     void parseHeaderLine_throws_whenTooShort() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         assertThatThrownBy(() -> parser.parseHeaderLine("SHORT"))
                 .isInstanceOf(IllegalArgumentException.class)
@@ -55,7 +52,7 @@ class BatchParserTest {
 
     @Test
     void parseHeaderLine_throws_whenRecordCountIsNotNumeric() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         String header = "DESAFIO-HYPERATIVA           20180524LOTE0001ABCDEF";
 
@@ -65,39 +62,39 @@ class BatchParserTest {
 
     @Test
     void parseCardLines_returnsEmpty_whenNull() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         Optional<Card> result = parser.parseCardLines(null);
 
         assertThat(result).isEmpty();
-        verifyNoInteractions(hasher, cardStatusRepository);
+        verifyNoInteractions(hasher);
     }
 
     @Test
     void parseCardLines_returnsEmpty_whenTooShort() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         Optional<Card> result = parser.parseCardLines("C1 4111111111111111");
 
         assertThat(result).isEmpty();
-        verifyNoInteractions(hasher, cardStatusRepository);
+        verifyNoInteractions(hasher);
     }
 
     @Test
     void parseCardLines_returnsEmpty_whenPanInvalid() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         String line = "C1     123                                         ";
 
         Optional<Card> result = parser.parseCardLines(line);
 
         assertThat(result).isEmpty();
-        verifyNoInteractions(hasher, cardStatusRepository);
+        verifyNoInteractions(hasher);
     }
 
     @Test
     void parseCardLines_parsesAndBuildsCard_whenValid() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         String pan = "4111111111111111";
         String hash = "hash-4111";
@@ -106,11 +103,6 @@ class BatchParserTest {
         when(hasher.hash(pan)).thenReturn(hash);
         when(hasher.last4(pan)).thenReturn(last4);
 
-        CardStatus validStatus = new CardStatus();
-        validStatus.setCardStatusName("VALID");
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.toString()))
-                .thenReturn(validStatus);
-
         String line = "C2     4111111111111111                               ";
 
         Optional<Card> result = parser.parseCardLines(line);
@@ -121,28 +113,21 @@ class BatchParserTest {
         assertThat(card.getCardHash()).isEqualTo(hash);
         assertThat(card.getCardLast4()).isEqualTo(last4);
         assertThat(card.getBatchSequenceNumber()).isEqualTo("2");
-        assertThat(card.getCardStatus()).isNotNull();
-        assertThat(card.getCardStatus().getCardStatusName()).isEqualTo("VALID");
+        assertThat(card.getCardStatus()).isNull();
 
         verify(hasher).hash(pan);
         verify(hasher).last4(pan);
-        verify(cardStatusRepository).findByCardStatusName(CardStatus.Values.VALID.toString());
-        verifyNoMoreInteractions(hasher, cardStatusRepository);
+        verifyNoMoreInteractions(hasher);
     }
 
     @Test
     void parseCardLines_acceptsNonNumericSequence_andStillParsesCard_whenPanValid() {
-        BatchParser parser = new BatchParser(hasher, cardStatusRepository);
+        StringBatchParser parser = new StringBatchParser(hasher);
 
         String pan = "4111111111111111";
         when(hasher.hash(pan)).thenReturn("hash");
         when(hasher.last4(pan)).thenReturn("1111");
 
-        CardStatus validStatus = new CardStatus();
-        validStatus.setCardStatusName("VALID");
-        when(cardStatusRepository.findByCardStatusName(CardStatus.Values.VALID.toString()))
-                .thenReturn(validStatus);
-
         String line = "CABCDEF4111111111111111                               ";
 
         Optional<Card> result = parser.parseCardLines(line);
@@ -0,0 +1,55 @@
+package com.douglasavila.cardservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+class TimeOrderedUuidTest {
+
+    @Test
+    void next_isVersion7WithRfcVariant_andCarriesCurrentTimestamp() {
+        long before = System.currentTimeMillis();
+        UUID uuid = TimeOrderedUuid.next();
+        long after = System.currentTimeMillis();
+
+        assertThat(uuid.version()).isEqualTo(7);
+        assertThat(uuid.variant()).isEqualTo(2);
+        assertThat(uuid.getMostSignificantBits() >>> 16).isBetween(before, after);
+    }
+
+    @Test
+    void next_sortsByCreationMillisecond_inStringAndBinaryForm() {
+        UUID earlier = TimeOrderedUuid.next(1_700_000_000_000L);
+        UUID later = TimeOrderedUuid.next(1_700_000_000_001L);
+
+        assertThat(earlier.toString()).isLessThan(later.toString());
+        // Unsigned comparison of the leading 8 bytes, the order binary(16) keys sort in
+        assertThat(Long.compareUnsigned(earlier.getMostSignificantBits(), later.getMostSignificantBits())).isNegative();
+    }
+
+    @Test
+    void databaseOrder_comparesUnsigned_andOnlyVersion7IsTimeOrdered() {
+        UUID timeOrdered = TimeOrderedUuid.next(1_700_000_000_000L);
+        UUID random = new UUID(0xF000_0000_0000_4000L, 0x8000_0000_0000_0000L);
+
+        assertThat(random.compareTo(timeOrdered)).isNegative();
+        assertThat(TimeOrderedUuid.DATABASE_ORDER.compare(random, timeOrdered)).isPositive();
+        assertThat(TimeOrderedUuid.isTimeOrdered(timeOrdered)).isTrue();
+        assertThat(TimeOrderedUuid.isTimeOrdered(random)).isFalse();
+        assertThat(TimeOrderedUuid.epochMillis(timeOrdered)).isEqualTo(1_700_000_000_000L);
+    }
+
+    @Test
+    void next_generatesUniqueIds_acrossThreads() {
+        Set<UUID> ids = IntStream.range(0, 100_000).parallel()
+                .mapToObj(i -> TimeOrderedUuid.next())
+                .collect(Collectors.toSet());
+
+        assertThat(ids).hasSize(100_000);
+    }
+}
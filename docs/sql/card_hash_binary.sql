@@ -0,0 +1,24 @@
+-- Converts cards.card_hash from 64-character hex VARCHAR to BINARY(32).
+--
+-- Run against card_db before deploying a card-service version that maps card_hash as
+-- binary(32); ddl-auto=update does not change the type of an existing column. Card hashes
+-- themselves do not change, only how they are stored, so lookups keep matching.
+
+-- 1. New column next to the old one, so the table stays readable during the backfill
+ALTER TABLE cards ADD COLUMN card_hash_bin BINARY(32) NULL;
+
+-- 2. Backfill in small steps to keep each transaction and its undo log short.
+--    Repeat until it reports 0 rows affected.
+UPDATE cards
+SET card_hash_bin = UNHEX(card_hash)
+WHERE card_hash_bin IS NULL
+LIMIT 50000;
+
+-- 3. Must return 0 before going on: rows whose hash was not valid hex
+SELECT COUNT(*) FROM cards WHERE card_hash_bin IS NULL OR LENGTH(card_hash) <> 64;
+
+-- 4. Swap the columns. Dropping card_hash also drops its unique index
+ALTER TABLE cards
+    DROP COLUMN card_hash,
+    CHANGE COLUMN card_hash_bin card_hash BINARY(32) NOT NULL,
+    ADD CONSTRAINT uk_cards_card_hash UNIQUE (card_hash);